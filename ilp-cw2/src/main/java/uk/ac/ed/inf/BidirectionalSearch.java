@@ -0,0 +1,373 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A* grown from both ends at once, alternating between a forward search from the start and a backward search
+ * from the destination. The backward search steps against each legal angle, and tests each move in the direction
+ * the drone would fly it, so both halves use the same moves and the same no-fly rule.
+ * The two halves lie on different lattices, so they join wherever a node of one is 'close-to' a node of the other.
+ * The backward half's moves are then flown from the forward node, which shifts them by less than the 'close-to'
+ * distance, so the joined route is checked move by move and only kept if it is flyable and still ends
+ * 'close-to' the destination.
+ */
+public class BidirectionalSearch {
+
+    /** Instance of No-Fly zones to check intersection */
+    private static final NoFlyZones myNoFlyZones = NoFlyZones.getInstance();
+
+    /** Verdicts of moves already checked against the No-Fly zones, shared by every search */
+    private static final MoveVerdictCache myVerdicts = MoveVerdictCache.getInstance();
+
+    /** Side of the squares expanded nodes are filed under, so nearby nodes of the other half can be found */
+    private static final double CELL_SIZE = LongLat.CLOSE_TO_DISTANCE;
+
+    /** Scale of the increments between angles searched */
+    private final int angleIncrement;
+
+    /** Workspace of the forward half */
+    private final PathfindingWorkspace forward;
+
+    /** Workspace of the backward half */
+    private final PathfindingWorkspace backward;
+
+    /** Lattice positions expanded by the forward half, filed by square */
+    private final HashMap<Long, ArrayList<long[]>> forwardExpanded = new HashMap<>();
+
+    /** Lattice positions expanded by the backward half, filed by square */
+    private final HashMap<Long, ArrayList<long[]>> backwardExpanded = new HashMap<>();
+
+    /** Exact location of the start */
+    private LongLat startLL;
+
+    /** Exact location of the destination */
+    private LongLat endLL;
+
+    /** Cost of the best joined route found so far */
+    private double bestCost;
+
+    /** Forward node of the best join, as {x, y} */
+    private long[] bestForward;
+
+    /** Backward node of the best join, as {x, y}, or null if the forward half reached the destination itself */
+    private long[] bestBackward;
+
+    /** Number of nodes expanded by the forward half */
+    private int forwardExpansions = 0;
+
+    /** Number of nodes expanded by the backward half */
+    private int backwardExpansions = 0;
+
+    /**
+     * Create a search using this thread's two workspaces.
+     *
+     * @param angleIncrement of how far apart searched angles are in degrees.
+     */
+    public BidirectionalSearch(int angleIncrement) {
+        this.angleIncrement = angleIncrement;
+        this.forward = PathfindingWorkspace.get();
+        this.backward = PathfindingWorkspace.getReverse();
+    }
+
+    /**
+     * Compute a route from one location to another by searching from both ends.
+     * Stops once neither half can lead to a cheaper join than the best found.
+     *
+     * @param startLL location to start at.
+     * @param endLL   location to end 'close-to'.
+     * @return a collection of pathfinding nodes, beginning at the start.
+     */
+    public List<PathfindingNode> routeTo(LongLat startLL, LongLat endLL) {
+        this.startLL = startLL;
+        this.endLL = endLL;
+        this.bestCost = Double.POSITIVE_INFINITY;
+        this.bestForward = null;
+        this.bestBackward = null;
+
+        var start = new PathfindingNode(startLL.getLongitude(), startLL.getLatitude());
+        var end = new PathfindingNode(endLL.getLongitude(), endLL.getLatitude());
+        seed(forward, start, endLL);
+        seed(backward, end, startLL);
+
+        boolean isForward = true;
+        while (forward.hasOpen() && backward.hasOpen()) {
+            if (bestCost <= Math.max(forward.getTopF(), backward.getTopF())) {
+                break; //no join left can be cheaper.
+            }
+            if (isForward) {
+                expand(forward, backward, forwardExpanded, backwardExpanded, true);
+            } else {
+                expand(backward, forward, backwardExpanded, forwardExpanded, false);
+            }
+            isForward = !isForward;
+        }
+
+        if (bestForward == null) {
+            System.err.println("PATH COULD NOT BE FOUND");
+            List<PathfindingNode> path = new ArrayList<>();
+            path.add(start);
+            return path;
+        }
+        return buildRoute(start);
+    }
+
+    /**
+     * Put the first node of one half into its open list.
+     *
+     * @param workspace of the half.
+     * @param first     node to begin from.
+     * @param goal      location the half is heading for.
+     */
+    private static void seed(PathfindingWorkspace workspace, PathfindingNode first, LongLat goal) {
+        workspace.ensureCapacity(1);
+        int slot = workspace.slotOf(first.getX(), first.getY());
+        workspace.setRoute(slot, PathfindingWorkspace.NO_SLOT, LongLat.JUNK_ANGLE, 0, first.flightHeuristic(goal));
+        workspace.pushOrDecrease(slot);
+    }
+
+    /**
+     * Expand the best open node of one half, and try to join it with nearby nodes expanded by the other.
+     *
+     * @param own           workspace of the half being expanded.
+     * @param other         workspace of the other half.
+     * @param ownExpanded   positions expanded by this half.
+     * @param otherExpanded positions expanded by the other half.
+     * @param isForward     true if this is the forward half.
+     */
+    private void expand(PathfindingWorkspace own, PathfindingWorkspace other,
+                        HashMap<Long, ArrayList<long[]>> ownExpanded, HashMap<Long, ArrayList<long[]>> otherExpanded,
+                        boolean isForward) {
+        own.ensureCapacity(PathfindingLattice.ANGLE_COUNT); //grow now, as slots are held while expanding.
+        int n = own.popOpen();
+        own.setClosed(n, true);
+        long nx = own.getX(n);
+        long ny = own.getY(n);
+        double nLongitude = longitudeOf(own, n, isForward);
+        double nLatitude = latitudeOf(own, n, isForward);
+        double nG = own.getG(n);
+
+        if (isForward) {
+            forwardExpansions++;
+            if (LongLat.closeTo(nLongitude, nLatitude, endLL) && nG < bestCost) {
+                bestCost = nG;
+                bestForward = new long[]{nx, ny};
+                bestBackward = null;
+            }
+        } else {
+            backwardExpansions++;
+        }
+
+        //join with every node of the other half 'close-to' this one.
+        long col = (long) Math.floor(nLongitude / CELL_SIZE);
+        long row = (long) Math.floor(nLatitude / CELL_SIZE);
+        for (long c = col - 1; c <= col + 1; c++) {
+            for (long r = row - 1; r <= row + 1; r++) {
+                var nearby = otherExpanded.get(cellKey(c, r));
+                if (nearby == null) {
+                    continue;
+                }
+                for (long[] pos : nearby) {
+                    int m = other.find(pos[0], pos[1]);
+                    double cost = nG + other.getG(m);
+                    if (cost >= bestCost || !LongLat.closeTo(nLongitude, nLatitude,
+                            new LongLat(longitudeOf(other, m, !isForward), latitudeOf(other, m, !isForward)))) {
+                        continue;
+                    }
+                    long[] f = isForward ? new long[]{nx, ny} : pos;
+                    long[] b = isForward ? pos : new long[]{nx, ny};
+                    if (isJoinFlyable(f, b)) {
+                        bestCost = cost;
+                        bestForward = f;
+                        bestBackward = b;
+                    }
+                }
+            }
+        }
+        ownExpanded.computeIfAbsent(cellKey(col, row), k -> new ArrayList<>()).add(new long[]{nx, ny});
+
+        var neighbours = own.getNeighbours();
+        if (isForward) {
+            neighbours.fill(nx, ny, angleIncrement);
+        } else {
+            neighbours.fillReverse(nx, ny, angleIncrement);
+        }
+        double totalWeight = nG + LongLat.STRAIGHT_LINE_DISTANCE;
+        LongLat goal = isForward ? endLL : startLL;
+
+        for (int i = 0; i < neighbours.size(); i++) {
+            double longitude = neighbours.getLongitude(i);
+            double latitude = neighbours.getLatitude(i);
+            if (!LongLat.isConfined(longitude, latitude)) {
+                continue;
+            }
+
+            int m = own.find(neighbours.getX(i), neighbours.getY(i));
+            if (m >= 0 && totalWeight >= own.getG(m)) {
+                continue;
+            }
+
+            //moves are always tested in the direction the drone flies them.
+            boolean blocked;
+            if (isForward) {
+                blocked = isBlocked(own.getParent(n) == PathfindingWorkspace.NO_SLOT, nx, ny,
+                        neighbours.getAngleIndex(i), nLongitude, nLatitude, longitude, latitude);
+            } else {
+                blocked = isBlocked(false, neighbours.getX(i), neighbours.getY(i),
+                        neighbours.getAngleIndex(i), longitude, latitude, nLongitude, nLatitude);
+            }
+            if (blocked) {
+                continue;
+            }
+
+            if (m < 0) {
+                m = own.slotOf(neighbours.getX(i), neighbours.getY(i));
+            } else if (own.isClosed(m)) {
+                own.setClosed(m, false);
+            }
+            own.setRoute(m, n, neighbours.getAngle(i), totalWeight,
+                    totalWeight + LongLat.flightHeuristic(longitude, latitude, goal));
+            own.pushOrDecrease(m);
+        }
+    }
+
+    /**
+     * Check that the backward half's moves from a backward node can be flown from a forward node instead.
+     *
+     * @param f forward node as {x, y}.
+     * @param b backward node as {x, y}.
+     * @return true if every move is confined and clear of the no-fly zones, and it ends 'close-to' the destination.
+     */
+    private boolean isJoinFlyable(long[] f, long[] b) {
+        int fs = forward.find(f[0], f[1]);
+        double longitude = longitudeOf(forward, fs, true);
+        double latitude = latitudeOf(forward, fs, true);
+        boolean isExact = forward.getParent(fs) == PathfindingWorkspace.NO_SLOT; //only the start is off the lattice.
+        long x = f[0];
+        long y = f[1];
+
+        int m = backward.find(b[0], b[1]);
+        while (backward.getParent(m) != PathfindingWorkspace.NO_SLOT) {
+            int index = PathfindingLattice.indexOf(backward.getAngle(m));
+            long nextX = x + PathfindingLattice.stepX(index);
+            long nextY = y + PathfindingLattice.stepY(index);
+            double nextLongitude = PathfindingLattice.toLongitude(nextX);
+            double nextLatitude = PathfindingLattice.toLatitude(nextY);
+            if (!LongLat.isConfined(nextLongitude, nextLatitude) ||
+                    isBlocked(isExact, x, y, index, longitude, latitude, nextLongitude, nextLatitude)) {
+                return false;
+            }
+            isExact = false;
+            x = nextX;
+            y = nextY;
+            longitude = nextLongitude;
+            latitude = nextLatitude;
+            m = backward.getParent(m);
+        }
+        return LongLat.closeTo(longitude, latitude, endLL);
+    }
+
+    /**
+     * Check if a move crosses the no-fly zones, through the verdict cache unless it starts off the lattice.
+     *
+     * @param isExact    true if the move starts at an exact location rather than its lattice position.
+     * @param x          lattice x coordinate of the start.
+     * @param y          lattice y coordinate of the start.
+     * @param angleIndex index of the move's angle.
+     * @param x1         longitude of the start.
+     * @param y1         latitude of the start.
+     * @param x2         longitude of the end.
+     * @param y2         latitude of the end.
+     * @return true if the move would intersect the no-fly zones.
+     */
+    private static boolean isBlocked(boolean isExact, long x, long y, int angleIndex,
+                                     double x1, double y1, double x2, double y2) {
+        if (isExact) {
+            return myNoFlyZones.doesIntersectNoFly(x1, y1, x2, y2);
+        }
+        return myVerdicts.isBlocked(x, y, angleIndex, x1, y1, x2, y2);
+    }
+
+    /**
+     * Build the route of the best join: the forward half's route to its node, then the backward half's moves.
+     *
+     * @param start node at the exact start.
+     * @return a collection of pathfinding nodes, beginning at the start.
+     */
+    private List<PathfindingNode> buildRoute(PathfindingNode start) {
+        List<PathfindingNode> path = new ArrayList<>();
+        int n = forward.find(bestForward[0], bestForward[1]);
+        while (forward.getParent(n) != PathfindingWorkspace.NO_SLOT) {
+            var node = start.at(forward.getX(n), forward.getY(n));
+            node.setAngle(forward.getAngle(n));
+            node.setG(forward.getG(n));
+            path.add(node);
+            n = forward.getParent(n);
+        }
+        start.setG(0);
+        path.add(start);
+        Collections.reverse(path);
+
+        if (bestBackward != null) {
+            var last = path.get(path.size() - 1);
+            long x = bestForward[0];
+            long y = bestForward[1];
+            double g = last.getG();
+            int m = backward.find(bestBackward[0], bestBackward[1]);
+            while (backward.getParent(m) != PathfindingWorkspace.NO_SLOT) {
+                int angle = backward.getAngle(m);
+                int index = PathfindingLattice.indexOf(angle);
+                x += PathfindingLattice.stepX(index);
+                y += PathfindingLattice.stepY(index);
+                g += LongLat.STRAIGHT_LINE_DISTANCE;
+                var node = start.at(x, y);
+                node.setAngle(angle);
+                node.setG(g);
+                path.add(node);
+                m = backward.getParent(m);
+            }
+        }
+
+        for (int i = 0; i < path.size(); i++) {
+            path.get(i).setF(path.get(i).getG());
+            if (i > 0) {
+                path.get(i).setParent(path.get(i - 1));
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Longitude of a node, which is exact for the first node of a half and on the lattice otherwise.
+     */
+    private double longitudeOf(PathfindingWorkspace workspace, int slot, boolean isForward) {
+        if (workspace.getParent(slot) == PathfindingWorkspace.NO_SLOT) {
+            return isForward ? startLL.getLongitude() : endLL.getLongitude();
+        }
+        return workspace.getLongitude(slot);
+    }
+
+    /**
+     * Latitude of a node, which is exact for the first node of a half and on the lattice otherwise.
+     */
+    private double latitudeOf(PathfindingWorkspace workspace, int slot, boolean isForward) {
+        if (workspace.getParent(slot) == PathfindingWorkspace.NO_SLOT) {
+            return isForward ? startLL.getLatitude() : endLL.getLatitude();
+        }
+        return workspace.getLatitude(slot);
+    }
+
+    private static long cellKey(long col, long row) {
+        return (col << 32) ^ (row & 0xFFFFFFFFL);
+    }
+
+    public int getForwardExpansions() {
+        return forwardExpansions;
+    }
+
+    public int getBackwardExpansions() {
+        return backwardExpansions;
+    }
+}
@@ -0,0 +1,154 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Polygon;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signed distance from the confinement area to the nearest edge of the no-fly zones, sampled on a grid.
+ * Each square holds a lower bound on the distance from any point in it to the nearest edge, negative if the
+ * square's centre is inside a zone. A line shorter than that distance cannot reach any edge, so it can be
+ * accepted without testing, and the exact test only runs near buildings.
+ * A field is never changed once built, except for its counters, so it can be shared between threads.
+ */
+public class ClearanceField {
+
+    /** Width and height of each square in degrees, a quarter of a move */
+    private static final double CELL_SIZE = LongLat.STRAIGHT_LINE_DISTANCE / 4;
+
+    /** Safety margin for rounding, a line must be this much clear of every edge to skip the test */
+    private static final double MARGIN = 1E-9;
+
+    /** Number of columns across the confinement area */
+    private final int cols;
+
+    /** Number of rows across the confinement area */
+    private final int rows;
+
+    /** Clearance of each square in degrees, row after row */
+    private final double[] clearance;
+
+    /** Lines asked about */
+    private final LongAdder checks = new LongAdder();
+
+    /** Lines accepted without testing */
+    private final LongAdder skipped = new LongAdder();
+
+    /**
+     * Build the field over the confinement area.
+     *
+     * @param polygons no-fly zones to measure the distance to.
+     */
+    public ClearanceField(List<Polygon> polygons) {
+        this.cols = (int) Math.ceil((LongLat.CONFINEMENT_LONGITUDE_EAST - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        this.rows = (int) Math.ceil((LongLat.CONFINEMENT_LATITUDE_NORTH - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        this.clearance = new double[cols * rows];
+
+        double halfDiagonal = CELL_SIZE * Math.sqrt(2) / 2;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                double x = LongLat.CONFINEMENT_LONGITUDE_WEST + (c + 0.5) * CELL_SIZE;
+                double y = LongLat.CONFINEMENT_LATITUDE_SOUTH + (r + 0.5) * CELL_SIZE;
+
+                double nearest = Double.POSITIVE_INFINITY;
+                boolean inside = false;
+                for (var poly : polygons) {
+                    var ring = poly.coordinates().get(0);
+                    for (int i = 0; i < ring.size() - 1; i++) {
+                        double x1 = ring.get(i).longitude(), y1 = ring.get(i).latitude();
+                        double x2 = ring.get(i + 1).longitude(), y2 = ring.get(i + 1).latitude();
+                        nearest = Math.min(nearest, distanceToSegment(x, y, x1, y1, x2, y2));
+                        if ((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+                            inside = !inside; //crossing to the east of the centre.
+                        }
+                    }
+                }
+                //every point in the square is within half a diagonal of its centre.
+                double bound = Math.max(0, nearest - halfDiagonal);
+                clearance[r * cols + c] = inside ? -bound : bound;
+            }
+        }
+    }
+
+    /**
+     * Distance from a point to a line segment.
+     *
+     * @return distance in degrees from (px, py) to segment (x1, y1)-(x2, y2).
+     */
+    private static double distanceToSegment(double px, double py, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : ((px - x1) * dx + (py - y1) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(px - (x1 + t * dx), py - (y1 + t * dy));
+    }
+
+    /**
+     * Get the clearance of the square holding a point.
+     *
+     * @param longitude of the point.
+     * @param latitude  of the point.
+     * @return signed clearance in degrees, or 0 if the point is outside the confinement area.
+     */
+    public double clearanceAt(double longitude, double latitude) {
+        int c = (int) Math.floor((longitude - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        int r = (int) Math.floor((latitude - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        if (c < 0 || c >= cols || r < 0 || r >= rows) {
+            return 0;
+        }
+        return clearance[r * cols + c];
+    }
+
+    /**
+     * Check if a line is so far from every edge that it cannot intersect one.
+     * A line lies within its own length of its start, so it is clear if it is shorter than the start's clearance.
+     * Lines wholly inside a zone cross no edge either, so only the size of the clearance matters.
+     *
+     * @param x1 longitude of the start.
+     * @param y1 latitude of the start.
+     * @param x2 longitude of the end.
+     * @param y2 latitude of the end.
+     * @return true if the line certainly misses every edge, false if it must be tested.
+     */
+    public boolean isClear(double x1, double y1, double x2, double y2) {
+        checks.increment();
+        double clear = Math.abs(clearanceAt(x1, y1)) - MARGIN;
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        if (clear > 0 && clear * clear > dx * dx + dy * dy) { //compared squared, to save a square root.
+            skipped.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Set the counters back to zero, so they cover only what follows.
+     */
+    public void resetCounters() {
+        checks.reset();
+        skipped.reset();
+    }
+
+    public long getChecks() {
+        return checks.sum();
+    }
+
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    /**
+     * Override toString to give the counters, for diagnostics.
+     *
+     * @return String of how many checks were skipped.
+     */
+    @Override
+    public String toString() {
+        long c = getChecks();
+        long s = getSkipped();
+        return String.format("checks: %d, skipped: %d (%.1f%%)", c, s, c == 0 ? 0 : 100.0 * s / c);
+    }
+}
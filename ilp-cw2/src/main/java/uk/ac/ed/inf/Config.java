@@ -31,7 +31,7 @@ public class Config {
      *
      * @return Config object.
      */
-    public static Config getInstance() {
+    public static synchronized Config getInstance() {
         if (instance == null) {
             instance = new Config();
         }
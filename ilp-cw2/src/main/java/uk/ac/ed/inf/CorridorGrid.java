@@ -0,0 +1,217 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Polygon;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Coarse grid over the confinement area, for planning a corridor before the fine search.
+ * Each square is a few moves wide, and is blocked wherever a no-fly zone overlaps it. A search over the squares is
+ * tiny, and the squares along its route, widened by one square each side, are all the fine search needs to visit.
+ * A grid is never changed once built, so it can be shared between threads.
+ */
+public class CorridorGrid {
+
+    /** Width and height of each square in degrees, two moves */
+    private static final double CELL_SIZE = LongLat.STRAIGHT_LINE_DISTANCE * 2;
+
+    /** Squares either side of the coarse route which the fine search may also visit */
+    private static final int WIDTH = 1;
+
+    /** Number of columns across the confinement area */
+    private final int cols;
+
+    /** Number of rows across the confinement area */
+    private final int rows;
+
+    /** True for each square overlapped by a no-fly zone, row after row */
+    private final boolean[] blocked;
+
+    /**
+     * Build the grid over the confinement area.
+     *
+     * @param polygons no-fly zones to block squares with.
+     */
+    public CorridorGrid(List<Polygon> polygons) {
+        this.cols = (int) Math.ceil((LongLat.CONFINEMENT_LONGITUDE_EAST - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        this.rows = (int) Math.ceil((LongLat.CONFINEMENT_LATITUDE_NORTH - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        this.blocked = new boolean[cols * rows];
+
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                var square = new Rectangle2D.Double(LongLat.CONFINEMENT_LONGITUDE_WEST + c * CELL_SIZE,
+                        LongLat.CONFINEMENT_LATITUDE_SOUTH + r * CELL_SIZE, CELL_SIZE, CELL_SIZE);
+                blocked[r * cols + c] = overlaps(square, polygons);
+            }
+        }
+    }
+
+    /**
+     * Check if a square overlaps any polygon: either an edge crosses the square, or the square is wholly inside.
+     *
+     * @param square   to check.
+     * @param polygons to check against.
+     * @return true if any part of the square is inside a polygon.
+     */
+    private static boolean overlaps(Rectangle2D square, List<Polygon> polygons) {
+        double x = square.getCenterX();
+        double y = square.getCenterY();
+        for (var poly : polygons) {
+            var ring = poly.coordinates().get(0);
+            boolean inside = false;
+            for (int i = 0; i < ring.size() - 1; i++) {
+                double x1 = ring.get(i).longitude(), y1 = ring.get(i).latitude();
+                double x2 = ring.get(i + 1).longitude(), y2 = ring.get(i + 1).latitude();
+                if (square.intersectsLine(x1, y1, x2, y2)) {
+                    return true;
+                }
+                if ((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+                    inside = !inside; //crossing to the east of the centre.
+                }
+            }
+            if (inside) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Square holding a point.
+     *
+     * @param longitude of the point.
+     * @param latitude  of the point.
+     * @return index of the square, or -1 if the point is outside the confinement area.
+     */
+    public int cellOf(double longitude, double latitude) {
+        int c = (int) Math.floor((longitude - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        int r = (int) Math.floor((latitude - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        if (c < 0 || c >= cols || r < 0 || r >= rows) {
+            return -1;
+        }
+        return r * cols + c;
+    }
+
+    /**
+     * Plan a corridor between two points with A* over the squares, moving to any of the eight around each one.
+     * The squares holding the start and the end are never blocked, as the drone is already there or only needs to
+     * get 'close-to' it. Diagonal steps between two blocked squares are not allowed.
+     *
+     * @param start   location to start at.
+     * @param end     location to end 'close-to'.
+     * @param counter receives the number of squares expanded, in its first element.
+     * @return true for each square the fine search may visit, or null if no corridor exists.
+     */
+    public boolean[] corridor(LongLat start, LongLat end, int[] counter) {
+        int from = cellOf(start.getLongitude(), start.getLatitude());
+        int to = cellOf(end.getLongitude(), end.getLatitude());
+        counter[0] = 0;
+        if (from < 0 || to < 0) {
+            return null;
+        }
+
+        double[] g = new double[blocked.length];
+        int[] parent = new int[blocked.length];
+        boolean[] closed = new boolean[blocked.length];
+        Arrays.fill(g, Double.POSITIVE_INFINITY);
+        g[from] = 0;
+        parent[from] = -1;
+        var open = new PriorityQueue<double[]>((a, b) -> Double.compare(a[0], b[0])); //{f, cell}
+        open.add(new double[]{distance(from, to), from});
+
+        while (!open.isEmpty()) {
+            int n = (int) open.poll()[1];
+            if (closed[n]) {
+                continue; //stale entry, already expanded more cheaply.
+            }
+            if (n == to) {
+                return widen(n, parent);
+            }
+            closed[n] = true;
+            counter[0]++;
+
+            int r = n / cols;
+            int c = n % cols;
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    int nr = r + dr;
+                    int nc = c + dc;
+                    if ((dr == 0 && dc == 0) || nr < 0 || nr >= rows || nc < 0 || nc >= cols) {
+                        continue;
+                    }
+                    int m = nr * cols + nc;
+                    if (closed[m] || (blocked[m] && m != to)
+                            || (dr != 0 && dc != 0 && isBlocked(r * cols + nc, from, to) && isBlocked(nr * cols + c, from, to))) {
+                        continue;
+                    }
+                    double cost = g[n] + Math.hypot(dr, dc);
+                    if (cost < g[m]) {
+                        g[m] = cost;
+                        parent[m] = n;
+                        open.add(new double[]{cost + distance(m, to), m});
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if a square is blocked, other than the start or end of the corridor.
+     *
+     * @return true if the square may not be entered.
+     */
+    private boolean isBlocked(int cell, int from, int to) {
+        return blocked[cell] && cell != from && cell != to;
+    }
+
+    /**
+     * Straight line distance between two squares, in squares.
+     *
+     * @return distance between the squares' centres.
+     */
+    private double distance(int a, int b) {
+        return Math.hypot(a / cols - b / cols, a % cols - b % cols);
+    }
+
+    /**
+     * Mark every square on the coarse route, and every square within the corridor's width of one.
+     *
+     * @param end    last square of the route.
+     * @param parent square before each square on the route.
+     * @return true for each square in the corridor.
+     */
+    private boolean[] widen(int end, int[] parent) {
+        boolean[] allowed = new boolean[blocked.length];
+        for (int n = end; n >= 0; n = parent[n]) {
+            int r = n / cols;
+            int c = n % cols;
+            for (int nr = Math.max(0, r - WIDTH); nr <= Math.min(rows - 1, r + WIDTH); nr++) {
+                for (int nc = Math.max(0, c - WIDTH); nc <= Math.min(cols - 1, c + WIDTH); nc++) {
+                    allowed[nr * cols + nc] = true;
+                }
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Check if a point lies in a corridor.
+     *
+     * @param corridor  as planned by corridor().
+     * @param longitude of the point.
+     * @param latitude  of the point.
+     * @return true if the fine search may visit the point.
+     */
+    public boolean isInside(boolean[] corridor, double longitude, double latitude) {
+        int cell = cellOf(longitude, latitude);
+        return cell >= 0 && corridor[cell];
+    }
+
+    public int getCellCount() {
+        return blocked.length;
+    }
+}
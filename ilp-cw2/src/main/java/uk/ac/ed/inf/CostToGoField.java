@@ -0,0 +1,154 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+/**
+ * Cost-to-go field towards one place, made by a breadth-first search backwards from the place over a grid of
+ * squares a sixteenth of a move wide across the confinement area.
+ * A square is a step from another if one move, at one of the drone's angles, can go from some point of the first
+ * to some point of the second. Squares wholly inside a no-fly zone are never entered. The search allows every real
+ * move and more besides, so the moves it counts from a square are never more than any real route from a point in
+ * it needs. Moves that hop a corner are allowed, so the buildings are still covered by the visibility graph
+ * estimate, and the larger of the two is given.
+ * A field is never changed once built, except for the estimate it extends, so it can be shared between threads.
+ */
+public class CostToGoField extends ObstacleHeuristic {
+
+    /** Width and height of each square in degrees, a sixteenth of a move */
+    private static final double CELL_SIZE = LongLat.STRAIGHT_LINE_DISTANCE / 16;
+
+    /** Allowance for rounding when finding which squares a move can reach */
+    private static final double ROUNDING = 1E-9;
+
+    /** Moves from a square the search never reached */
+    private static final short UNREACHED = -1;
+
+    /** Column and row offsets, as {columns, rows}, from a square to every square one move can reach */
+    private static final int[][] OFFSETS = moveOffsets();
+
+    /** Number of columns across the confinement area */
+    private final int cols;
+
+    /** Number of rows across the confinement area */
+    private final int rows;
+
+    /** Fewest moves from each square to be 'close-to' the place, row after row */
+    private final short[] moves;
+
+    /** Squares the search reached */
+    private final int reached;
+
+    /**
+     * Search backwards from a place over every square of the confinement area.
+     *
+     * @param zones  version of the no-fly zones to go around.
+     * @param target location to end 'close-to'.
+     */
+    public CostToGoField(NoFlyZones.Snapshot zones, LongLat target) {
+        super(zones, target);
+        this.cols = (int) Math.ceil((LongLat.CONFINEMENT_LONGITUDE_EAST - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        this.rows = (int) Math.ceil((LongLat.CONFINEMENT_LATITUDE_NORTH - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        this.moves = new short[cols * rows];
+        Arrays.fill(moves, UNREACHED);
+
+        var clearance = zones.getClearance();
+        var blocked = new boolean[cols * rows];
+        int[] queue = new int[cols * rows];
+        int tail = 0;
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                double x = LongLat.CONFINEMENT_LONGITUDE_WEST + c * CELL_SIZE;
+                double y = LongLat.CONFINEMENT_LATITUDE_SOUTH + r * CELL_SIZE;
+                //negative only when the whole clearance square, and so this one, is inside a zone.
+                blocked[r * cols + c] = clearance.clearanceAt(x + CELL_SIZE / 2, y + CELL_SIZE / 2) < 0;
+                //nearest point of the square to the place.
+                double dx = Math.max(0, Math.max(x - target.getLongitude(), target.getLongitude() - x - CELL_SIZE));
+                double dy = Math.max(0, Math.max(y - target.getLatitude(), target.getLatitude() - y - CELL_SIZE));
+                if (!blocked[r * cols + c] && Math.sqrt(dx * dx + dy * dy) <= LongLat.CLOSE_TO_DISTANCE) {
+                    moves[r * cols + c] = 0;
+                    queue[tail++] = r * cols + c;
+                }
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            int to = queue[head];
+            int c = to % cols;
+            int r = to / cols;
+            for (int[] offset : OFFSETS) {
+                int fromC = c - offset[0];
+                int fromR = r - offset[1];
+                if (fromC < 0 || fromC >= cols || fromR < 0 || fromR >= rows) {
+                    continue;
+                }
+                int from = fromR * cols + fromC;
+                if (moves[from] == UNREACHED && !blocked[from]) {
+                    moves[from] = (short) (moves[to] + 1);
+                    queue[tail++] = from;
+                }
+            }
+        }
+        this.reached = tail;
+    }
+
+    /**
+     * Find every offset from one square to another which a single move can span.
+     * A move from a point of a square lands less than a square away from the move's own offset on each axis.
+     *
+     * @return offsets as {columns, rows}, without repeats.
+     */
+    private static int[][] moveOffsets() {
+        var offsets = new LinkedHashSet<Long>();
+        for (int i = 0; i < PathfindingLattice.ANGLE_COUNT; i++) {
+            double radians = Math.toRadians(PathfindingLattice.angleOf(i));
+            double dx = LongLat.STRAIGHT_LINE_DISTANCE * Math.cos(radians) / CELL_SIZE;
+            double dy = LongLat.STRAIGHT_LINE_DISTANCE * Math.sin(radians) / CELL_SIZE;
+            for (int c = (int) Math.floor(dx - 1 - ROUNDING); c <= (int) Math.ceil(dx + 1 + ROUNDING); c++) {
+                for (int r = (int) Math.floor(dy - 1 - ROUNDING); r <= (int) Math.ceil(dy + 1 + ROUNDING); r++) {
+                    if (Math.abs(dx - c) < 1 + ROUNDING && Math.abs(dy - r) < 1 + ROUNDING) {
+                        offsets.add(((long) c << 32) | (r & 0xFFFFFFFFL));
+                    }
+                }
+            }
+        }
+        return offsets.stream().map(o -> new int[]{(int) (o >> 32), (int) (long) o}).toArray(int[][]::new);
+    }
+
+    /**
+     * Find the square holding a position.
+     *
+     * @return index of the square, or -1 if the position is outside the confinement area.
+     */
+    private int cellOf(double longitude, double latitude) {
+        int c = (int) Math.floor((longitude - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        int r = (int) Math.floor((latitude - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        if (c < 0 || c >= cols || r < 0 || r >= rows) {
+            return -1;
+        }
+        return r * cols + c;
+    }
+
+    /**
+     * Fewest moves which could possibly reach the target from a position, the larger of the search's count for its
+     * square and the visibility graph estimate.
+     *
+     * @param longitude of the position.
+     * @param latitude  of the position.
+     * @return a number of moves never more than the real route needs.
+     */
+    @Override
+    public int minMoves(double longitude, double latitude) {
+        int bound = super.minMoves(longitude, latitude);
+        int cell = cellOf(longitude, latitude);
+        return cell < 0 ? bound : Math.max(bound, moves[cell]);
+    }
+
+    public int getReached() {
+        return reached;
+    }
+
+    public int getCellCount() {
+        return moves.length;
+    }
+}
@@ -0,0 +1,113 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cost-to-go fields towards Appleton Tower and every shop, the places every day's tours start, end and pass through.
+ * Each field gives the fewest moves that could reach its place from anywhere, going around the buildings, in a
+ * single lookup. They tell quickly when the drone certainly cannot get home in time, and act as heuristics for
+ * searches towards those places.
+ * The fields for one version of the no-fly zones are published together and never changed, and each field is made
+ * the first time it is asked for. Fields are made again whenever the no-fly zones change.
+ */
+public class CostToGoFields {
+
+    /** Pointer to instance */
+    private static CostToGoFields instance = null;
+
+    /** Instance of No-Fly zones the fields go around */
+    private final NoFlyZones myNoFlyZones = NoFlyZones.getInstance();
+
+    /** Fields for the latest version of the no-fly zones seen, null until first asked for */
+    private volatile Fields fields;
+
+    /**
+     * Uses a singleton pattern, so it has a private constructor.
+     */
+    private CostToGoFields() {
+    }
+
+    /**
+     * Get the instance of CostToGoFields
+     * Will be created if it doesn't exist
+     *
+     * @return CostToGoFields object
+     */
+    public static synchronized CostToGoFields getInstance() {
+        if (instance == null) {
+            instance = new CostToGoFields();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the field towards a place, starting a new set of fields first if the no-fly zones have changed.
+     * Threads racing to make the same field keep whichever was published first.
+     *
+     * @param place location to end 'close-to'.
+     * @return the field, or null if the place is not Appleton Tower or a shop.
+     */
+    public CostToGoField fieldTo(LongLat place) {
+        var current = fields;
+        var zones = myNoFlyZones.getSnapshot();
+        if (current == null || current.zones.getVersion() != zones.getVersion()) {
+            current = new Fields(zones);
+            fields = current;
+        }
+        int i = current.places.indexOf(place);
+        if (i < 0) {
+            return null;
+        }
+        if (current.made.get(i) == null) {
+            current.made.compareAndSet(i, null, new CostToGoField(current.zones, place));
+        }
+        return current.made.get(i);
+    }
+
+    /**
+     * Fewest moves which could possibly reach a place, without searching.
+     * Uses the place's field if it has one, otherwise the straight line distance.
+     *
+     * @param from  location to start at.
+     * @param place location to end 'close-to'.
+     * @return a number of moves never more than the real route needs.
+     */
+    public int minMoves(LongLat from, LongLat place) {
+        var field = fieldTo(place);
+        if (field != null) {
+            return field.minMoves(from.getLongitude(), from.getLatitude());
+        }
+        double remaining = LongLat.admissibleHeuristic(from.getLongitude(), from.getLatitude(), place);
+        return (int) Math.ceil(remaining / LongLat.STRAIGHT_LINE_DISTANCE - 1E-9);
+    }
+
+    /**
+     * The places with fields and the fields made so far, for one version of the no-fly zones.
+     */
+    private static class Fields {
+        /** Version of the no-fly zones the fields go around */
+        private final NoFlyZones.Snapshot zones;
+
+        /** Appleton Tower followed by every shop */
+        private final List<LongLat> places = new ArrayList<>();
+
+        /** Field towards each place, null until first asked for */
+        private final AtomicReferenceArray<CostToGoField> made;
+
+        /**
+         * Find the places, without making any field yet.
+         *
+         * @param zones version of the no-fly zones to go around.
+         */
+        private Fields(NoFlyZones.Snapshot zones) {
+            this.zones = zones;
+            places.add(new LongLat(PathBuilder.AT_LONGITUDE, PathBuilder.AT_LATITUDE));
+            for (Shop shop : Menus.getInstance().getShops()) {
+                places.add(new What3Words(shop.getLocation()).getCoordinates());
+            }
+            this.made = new AtomicReferenceArray<>(places.size());
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds the route straight towards a destination, for legs with nothing in the way.
+ * Each move takes the legal heading nearest the bearing to the destination from where the drone then is, so the
+ * route never strays more than a fraction of a move from the straight line, and no search is needed.
+ * The route is only given if every move is confined and clear of the no-fly zones, otherwise a search must be run.
+ * Moves are made from the exact start with the drone's own steps, not on the pathfinding lattice, so each is exactly
+ * a move long. The nodes still have lattice positions, for the caches keyed on them.
+ */
+public class DirectRoute {
+
+    /** Pointer to instance */
+    private static DirectRoute instance = null;
+
+    /** Instance of No-Fly zones to check the route against */
+    private final NoFlyZones myNoFlyZones = NoFlyZones.getInstance();
+
+    /** Routes asked for */
+    private final LongAdder attempts = new LongAdder();
+
+    /** Routes given without a search */
+    private final LongAdder used = new LongAdder();
+
+    /**
+     * Uses a singleton pattern, so it has a private constructor.
+     */
+    private DirectRoute() {
+    }
+
+    /**
+     * Get the instance of DirectRoute
+     * Will be created if it doesn't exist
+     *
+     * @return DirectRoute object
+     */
+    public static synchronized DirectRoute getInstance() {
+        if (instance == null) {
+            instance = new DirectRoute();
+        }
+        return instance;
+    }
+
+    /**
+     * Build the straight route from one LongLat to another, if it is clear.
+     * The straight line is tested first, as most blocked legs cross a building on it, then every move is tested.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @return a collection of pathfinding nodes, beginning at the start, or null if a search is needed.
+     */
+    public List<PathfindingNode> routeTo(LongLat startLL, LongLat endLL) {
+        attempts.increment();
+        if (myNoFlyZones.doesIntersectNoFly(startLL.getLongitude(), startLL.getLatitude(),
+                endLL.getLongitude(), endLL.getLatitude())) {
+            return null;
+        }
+
+        //each move is at most half an interval off the bearing, so it gets at least this much nearer.
+        double progress = LongLat.STRAIGHT_LINE_DISTANCE * Math.cos(Math.toRadians(LongLat.ANGLE_INTERVAL / 2.0));
+        int maxMoves = (int) Math.ceil(startLL.distanceTo(endLL) / progress) + 1;
+        List<PathfindingNode> path = new ArrayList<>(maxMoves + 1);
+        var node = new PathfindingNode(startLL.getLongitude(), startLL.getLatitude());
+        path.add(node);
+
+        while (!node.closeTo(endLL)) {
+            if (path.size() > maxMoves) {
+                return null;
+            }
+            int heading = headingTo(node, endLL);
+            LongLat to = node.asLongLat().nextPosition(heading);
+            var next = new PathfindingNode(to.getLongitude(), to.getLatitude());
+            if (!next.isConfined() || myNoFlyZones.doesIntersectNoFly(node.getLongitude(), node.getLatitude(),
+                    next.getLongitude(), next.getLatitude())) {
+                return null;
+            }
+            next.setAngle(heading);
+            next.setParent(node);
+            path.add(next);
+            node = next;
+        }
+        used.increment();
+        return path;
+    }
+
+    /**
+     * Legal heading nearest the bearing from one location to another.
+     *
+     * @param from location the move starts at.
+     * @param to   location to head towards.
+     * @return angle in degrees, a multiple of the angle interval.
+     */
+    private static int headingTo(LongLat from, LongLat to) {
+        double bearing = Math.toDegrees(Math.atan2(to.getLatitude() - from.getLatitude(),
+                to.getLongitude() - from.getLongitude()));
+        int heading = (int) Math.round(bearing / LongLat.ANGLE_INTERVAL) * LongLat.ANGLE_INTERVAL;
+        return Math.floorMod(heading, LongLat.MAX_ANGLE + LongLat.ANGLE_INTERVAL);
+    }
+
+    /**
+     * Set the counters back to zero, so they cover only what follows.
+     */
+    public void resetCounters() {
+        attempts.reset();
+        used.reset();
+    }
+
+    public long getAttempts() {
+        return attempts.sum();
+    }
+
+    public long getUsed() {
+        return used.sum();
+    }
+
+    /**
+     * Override toString to give the counters, for diagnostics.
+     *
+     * @return String of how often the straight route was used.
+     */
+    @Override
+    public String toString() {
+        long a = getAttempts();
+        long u = getUsed();
+        return String.format("used: %d of %d (%.1f%%)", u, a, a == 0 ? 0 : 100.0 * u / a);
+    }
+}
@@ -27,6 +27,15 @@ public class Drone {
     /** Constant for the order number when a move is made and it's not part of an order */
     private static final String UNKNOWN_ORDER = "UNKNOWN";
 
+    /** Routes are shared between flying and measuring, so each is only searched for once */
+    private final PathfindingInterface pathfinding = RouteCache.getInstance();
+
+    /** Straight routes, used instead of searching whenever nothing is in the way */
+    private final DirectRoute directRoute = DirectRoute.getInstance();
+
+    /** Time each route may be refined for in nanoseconds, or 0 to use the first route found */
+    private long routeBudgetNanos = 0;
+
     /**
      * Create a drone by providing an initial location in LongLat form.
      *
@@ -96,7 +105,7 @@ public class Drone {
         if (currentLocation.closeTo(dest)) {
             doHover(); //if close to dest. then just hover for one move.
         } else {
-            var points = new Pathfinding().routeTo(currentLocation, dest);
+            var points = findRoute(dest);
             this.commitMoves(points);
         }
 
@@ -105,6 +114,25 @@ public class Drone {
         }
     }
 
+    /**
+     * Get the route from current location to a destination.
+     * Flies straight there if nothing is in the way, otherwise searches, refining the route if the drone has a
+     * route budget.
+     *
+     * @param dest to find a route to.
+     * @return a collection of pathfinding nodes, beginning at the current location.
+     */
+    private List<PathfindingNode> findRoute(LongLat dest) {
+        var straight = directRoute.routeTo(currentLocation, dest);
+        if (straight != null) {
+            return straight;
+        }
+        if (routeBudgetNanos > 0) {
+            return pathfinding.anytimeRouteTo(currentLocation, dest, routeBudgetNanos);
+        }
+        return pathfinding.routeTo(currentLocation, dest);
+    }
+
     /**
      * Construct route from current location to a Stop and fly there.
      * Set order being delivered from Stop given.
@@ -150,12 +178,26 @@ public class Drone {
         if (currentLocation.closeTo(dest)) {
             dist = 1;
         } else {
-            var points = new Pathfinding().routeTo(currentLocation, dest);
+            var points = findRoute(dest);
             dist = points.size() - 1; //-1 needed as a line requires at least two points to start with
         }
         return dist;
     }
 
+    /**
+     * Get the fewest moves which could possibly reach a location from current location, without searching.
+     * Never more than movesTo gives, and counts a hover the same way.
+     *
+     * @param dest location to fly to.
+     * @return lower bound on the magnitude of DroneMoves to a location.
+     */
+    public int minMovesTo(LongLat dest) {
+        if (currentLocation.closeTo(dest)) {
+            return 1;
+        }
+        return CostToGoFields.getInstance().minMoves(currentLocation, dest);
+    }
+
     /**
      * Deletes all moves made since order number was last changed from one unique value to another.
      * Must be at least one order completed.
@@ -222,4 +264,8 @@ public class Drone {
     public int getMovesUsed() {
         return this.flightPath.size();
     }
+
+    public void setRouteBudgetNanos(long routeBudgetNanos) {
+        this.routeBudgetNanos = routeBudgetNanos;
+    }
 }
@@ -0,0 +1,121 @@
+package uk.ac.ed.inf;
+
+/**
+ * ALT heuristic for one search towards one target, looked up from the landmark tables.
+ * A position is at least |d(L, target) - d(L, position)| from the target for every landmark L, and is lowered by
+ * the most either place can be from the centre of its square, as the tables only hold the centres. Only the few
+ * landmarks giving the best bound at the start are consulted, as is usual for ALT.
+ * Like the obstacle heuristic, it is only used in squares clear of every edge, only towards targets further than
+ * 'close-to' from every edge, and is rounded up to whole moves.
+ */
+public class LandmarkHeuristic {
+
+    /** Number of landmarks consulted for each estimate */
+    private static final int ACTIVE_LANDMARKS = 4;
+
+    /** Allowance for the tables being stored as floats, and for rounding up to whole moves */
+    private static final double ROUNDING = 1E-8;
+
+    /** Distances from every square to every landmark */
+    private final LandmarkTables tables;
+
+    /** Squares the tables are indexed by */
+    private final VisibilityGraph graph;
+
+    /** Distance to the nearest edge, to tell where the tables may be used */
+    private final ClearanceField clearance;
+
+    /** Location to end 'close-to' */
+    private final LongLat target;
+
+    /** Landmarks consulted */
+    private final int[] active;
+
+    /** Distance from the target to each landmark consulted */
+    private final float[] toTarget;
+
+    /**
+     * Prepare the heuristic for a search, choosing which landmarks to consult.
+     *
+     * @param noFlyZones the tables were built around.
+     * @param tables     of distances to the landmarks.
+     * @param start      location the search begins at.
+     * @param target     location to end 'close-to'.
+     */
+    public LandmarkHeuristic(NoFlyZones noFlyZones, LandmarkTables tables, LongLat start, LongLat target) {
+        this.tables = tables;
+        var zones = noFlyZones.getSnapshot();
+        this.graph = zones.getVisibility();
+        this.clearance = zones.getClearance();
+        this.target = target;
+
+        int targetCell = graph.cellOf(target.getLongitude(), target.getLatitude());
+        int startCell = graph.cellOf(start.getLongitude(), start.getLatitude());
+        boolean usable = targetCell >= 0 && startCell >= 0
+                && clearance.clearanceAt(target.getLongitude(), target.getLatitude()) > LongLat.CLOSE_TO_DISTANCE;
+
+        //rank the landmarks by their bound at the start, landmarks the target cannot reach are never chosen.
+        double[] bounds = new double[usable ? tables.getLandmarkCount() : 0];
+        for (int l = 0; l < bounds.length; l++) {
+            float there = tables.distance(l, targetCell);
+            float here = tables.distance(l, startCell);
+            if (there == Float.POSITIVE_INFINITY) {
+                bounds[l] = -1;
+            } else {
+                bounds[l] = here == Float.POSITIVE_INFINITY ? 0 : Math.abs(there - here);
+            }
+        }
+
+        int count = 0;
+        int[] best = new int[Math.min(ACTIVE_LANDMARKS, bounds.length)];
+        while (count < best.length) {
+            int top = 0;
+            for (int l = 1; l < bounds.length; l++) {
+                if (bounds[l] > bounds[top]) {
+                    top = l;
+                }
+            }
+            if (bounds[top] < 0) {
+                break;
+            }
+            best[count++] = top;
+            bounds[top] = -1;
+        }
+
+        this.active = new int[count];
+        this.toTarget = new float[count];
+        for (int i = 0; i < count; i++) {
+            active[i] = best[i];
+            toTarget[i] = tables.distance(best[i], targetCell);
+        }
+    }
+
+    /**
+     * Estimate the distance still to fly from a position, never overestimating.
+     *
+     * @param longitude of the position.
+     * @param latitude  of the position.
+     * @return the estimate in degrees, a whole number of moves.
+     */
+    public double estimate(double longitude, double latitude) {
+        double distance = LongLat.distanceTo(longitude, latitude, target);
+        if (active.length > 0 && clearance.clearanceAt(longitude, latitude) > 0) {
+            int cell = graph.cellOf(longitude, latitude);
+            for (int i = 0; i < active.length; i++) {
+                float here = tables.distance(active[i], cell);
+                if (here != Float.POSITIVE_INFINITY) {
+                    distance = Math.max(distance, Math.abs(toTarget[i] - here) - 2 * VisibilityGraph.cellRadius());
+                }
+            }
+        }
+        double remaining = distance - LongLat.CLOSE_TO_DISTANCE - ROUNDING;
+        if (remaining <= 0) {
+            return 0;
+        }
+        return Math.ceil(remaining / LongLat.STRAIGHT_LINE_DISTANCE - ROUNDING) * LongLat.STRAIGHT_LINE_DISTANCE;
+    }
+
+    public int getActiveLandmarks() {
+        return active.length;
+    }
+}
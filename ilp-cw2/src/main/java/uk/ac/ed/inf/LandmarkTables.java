@@ -0,0 +1,139 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Distance around the buildings from every square of the confinement area to each of a few landmarks, for ALT
+ * (A*, landmarks and the triangle inequality). The distance between two places is at least the difference of their
+ * distances to any landmark, so the tables give an admissible heuristic towards any target.
+ * The landmarks are the points on the server's landmark map, Appleton Tower and the shops, none of which change
+ * from day to day, so the tables are built once and only built again if the no-fly zones change.
+ * Tables are never changed once built, so they can be shared between threads.
+ */
+public class LandmarkTables {
+
+    /** Constant for the path on server where the landmarks can be found */
+    private static final String SERVER_PATH_TO_LANDMARKS = "buildings/landmarks.geojson";
+
+    /** Pointer to instance */
+    private static LandmarkTables instance = null;
+
+    /** Version of the no-fly zones the tables were built for */
+    private final int version;
+
+    /** Landmarks the tables measure from */
+    private final List<LongLat> landmarks;
+
+    /** Number of squares in each table */
+    private final int cells;
+
+    /** Distance from each square's centre to each landmark in degrees, landmark after landmark, infinite if unknown */
+    private final float[] distances;
+
+    /** Time taken to build the tables in nanoseconds */
+    private final long buildNanos;
+
+    /**
+     * Build the tables for the current no-fly zones.
+     * Uses a singleton pattern, so it has a private constructor.
+     */
+    private LandmarkTables() {
+        long t0 = System.nanoTime();
+        var zones = NoFlyZones.getInstance().getSnapshot();
+        var graph = zones.getVisibility();
+        var clearance = zones.getClearance();
+        this.version = zones.getVersion();
+        this.landmarks = new ArrayList<>();
+        for (LongLat point : fetchLandmarks()) {
+            if (clearance.clearanceAt(point.getLongitude(), point.getLatitude()) > 0) { //distances from inside a building mean nothing.
+                landmarks.add(point);
+            }
+        }
+
+        this.cells = graph.getCellCount();
+        this.distances = new float[landmarks.size() * cells];
+        for (int l = 0; l < landmarks.size(); l++) {
+            double lng = landmarks.get(l).getLongitude();
+            double lat = landmarks.get(l).getLatitude();
+            double[] fromCorners = graph.distancesTo(lng, lat);
+            for (int cell = 0; cell < cells; cell++) {
+                double x = graph.cellLongitude(cell);
+                double y = graph.cellLatitude(cell);
+                double distance = Double.POSITIVE_INFINITY;
+                if (clearance.clearanceAt(x, y) > 0) {
+                    distance = graph.distanceFromCell(cell, lng, lat, fromCorners, graph.isVisible(x, y, lng, lat));
+                }
+                distances[l * cells + cell] = (float) distance;
+            }
+        }
+        this.buildNanos = System.nanoTime() - t0;
+    }
+
+    /**
+     * Get the instance of LandmarkTables
+     * Will be built if it doesn't exist, or if the no-fly zones have changed since it was built.
+     *
+     * @return LandmarkTables object
+     */
+    public static synchronized LandmarkTables getInstance() {
+        if (instance == null || instance.version != NoFlyZones.getInstance().getVersion()) {
+            instance = new LandmarkTables();
+        }
+        return instance;
+    }
+
+    /**
+     * Collect every landmark: the points on the server's landmark map, Appleton Tower, and each shop.
+     *
+     * @return collection of landmark locations.
+     */
+    private static List<LongLat> fetchLandmarks() {
+        var points = new ArrayList<LongLat>();
+        String response = ServerIO.getRequest(ServerIO.URLFromPath(SERVER_PATH_TO_LANDMARKS));
+        var features = FeatureCollection.fromJson(response).features();
+        assert features != null;
+        for (var feature : features) {
+            var point = (Point) feature.geometry();
+            points.add(new LongLat(point.longitude(), point.latitude()));
+        }
+        points.add(new LongLat(PathBuilder.AT_LONGITUDE, PathBuilder.AT_LATITUDE));
+        for (Shop shop : Menus.getInstance().getShops()) {
+            points.add(new What3Words(shop.getLocation()).getCoordinates());
+        }
+        return points;
+    }
+
+    /**
+     * Look up the distance from a square to a landmark.
+     *
+     * @param landmark index of the landmark.
+     * @param cell     index of the square, as given by the visibility graph.
+     * @return distance in degrees, infinite if unknown.
+     */
+    public float distance(int landmark, int cell) {
+        return distances[landmark * cells + cell];
+    }
+
+    public int getLandmarkCount() {
+        return landmarks.size();
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Override toString to give the size of the tables, for diagnostics.
+     *
+     * @return String of the landmarks, squares and build time.
+     */
+    @Override
+    public String toString() {
+        return String.format("landmarks: %d, squares: %d, table: %d KB, built in: %.1f ms",
+                landmarks.size(), cells, distances.length * Float.BYTES / 1024, buildNanos / 1e6);
+    }
+}
@@ -26,16 +26,33 @@ public class LongLat {
     protected static final int ANGLE_INTERVAL = 10;
 
     /** Confinement North latitude */
-    private static final double CONFINEMENT_LATITUDE_NORTH = 55.946233;
+    protected static final double CONFINEMENT_LATITUDE_NORTH = 55.946233;
 
     /** Confinement South latitude */
-    private static final double CONFINEMENT_LATITUDE_SOUTH = 55.942617;
+    protected static final double CONFINEMENT_LATITUDE_SOUTH = 55.942617;
 
     /** Confinement West longitude */
-    private static final double CONFINEMENT_LONGITUDE_WEST = -3.192473;
+    protected static final double CONFINEMENT_LONGITUDE_WEST = -3.192473;
 
     /** Confinement East longitude */
-    private static final double CONFINEMENT_LONGITUDE_EAST = -3.184319;
+    protected static final double CONFINEMENT_LONGITUDE_EAST = -3.184319;
+
+    /** Number of legal angles a Drone can move in */
+    protected static final int ANGLE_COUNT = (MAX_ANGLE - MIN_ANGLE) / ANGLE_INTERVAL + 1;
+
+    /** Change in longitude of a move for each legal angle, computed once */
+    private static final double[] STEP_LONGITUDE = new double[ANGLE_COUNT];
+
+    /** Change in latitude of a move for each legal angle, computed once */
+    private static final double[] STEP_LATITUDE = new double[ANGLE_COUNT];
+
+    static {
+        for (int i = 0; i < ANGLE_COUNT; i++) {
+            int angle = MIN_ANGLE + i * ANGLE_INTERVAL;
+            STEP_LONGITUDE[i] = Math.cos(Math.toRadians(angle)) * STRAIGHT_LINE_DISTANCE;
+            STEP_LATITUDE[i] = Math.sin(Math.toRadians(angle)) * STRAIGHT_LINE_DISTANCE;
+        }
+    }
 
 
     /** Longitude of this coordinate */
@@ -62,8 +79,19 @@ public class LongLat {
      * @return true if it is within the confined area.
      */
     public boolean isConfined() {
-        return (this.getLatitude() < CONFINEMENT_LATITUDE_NORTH && this.getLatitude() > CONFINEMENT_LATITUDE_SOUTH &&
-                this.getLongitude() > CONFINEMENT_LONGITUDE_WEST && this.getLongitude() < CONFINEMENT_LONGITUDE_EAST);
+        return isConfined(this.getLongitude(), this.getLatitude());
+    }
+
+    /**
+     * Checks to ensure a position is within the allowed area, without creating a LongLat.
+     *
+     * @param longitude of position.
+     * @param latitude  of position.
+     * @return true if it is within the confined area.
+     */
+    public static boolean isConfined(double longitude, double latitude) {
+        return (latitude < CONFINEMENT_LATITUDE_NORTH && latitude > CONFINEMENT_LATITUDE_SOUTH &&
+                longitude > CONFINEMENT_LONGITUDE_WEST && longitude < CONFINEMENT_LONGITUDE_EAST);
     }
 
     /**
@@ -73,8 +101,34 @@ public class LongLat {
      * @return the magnitude of the distance in degrees.
      */
     public double distanceTo(LongLat destination) {
-        return (Math.sqrt(Math.pow(this.getLongitude() - destination.getLongitude(), 2) +
-                Math.pow(this.getLatitude() - destination.getLatitude(), 2)));
+        return distanceTo(this.getLongitude(), this.getLatitude(), destination);
+    }
+
+    /**
+     * Calculates the distance between a position and a given location using Euclidean Distance.
+     *
+     * @param longitude   of the 'from' position.
+     * @param latitude    of the 'from' position.
+     * @param destination the 'to' location for which distance is to be calculated.
+     * @return the magnitude of the distance in degrees.
+     */
+    public static double distanceTo(double longitude, double latitude, LongLat destination) {
+        return (Math.sqrt(Math.pow(longitude - destination.getLongitude(), 2) +
+                Math.pow(latitude - destination.getLatitude(), 2)));
+    }
+
+    /**
+     * Calculates the direction from a position to a given location, measured the same way as move angles.
+     *
+     * @param longitude   of the 'from' position.
+     * @param latitude    of the 'from' position.
+     * @param destination the 'to' location to head for.
+     * @return the bearing in degrees anticlockwise from east, from 0 up to 360.
+     */
+    public static double bearingTo(double longitude, double latitude, LongLat destination) {
+        double bearing = Math.toDegrees(Math.atan2(destination.getLatitude() - latitude,
+                destination.getLongitude() - longitude));
+        return bearing < 0 ? bearing + 360 : bearing;
     }
 
     /**
@@ -85,12 +139,25 @@ public class LongLat {
      * @return true if the location is regarded as 'close' to self.
      */
     public boolean closeTo(LongLat destination) {
-        return this.distanceTo(destination) < CLOSE_TO_DISTANCE;
+        return closeTo(this.getLongitude(), this.getLatitude(), destination);
+    }
+
+    /**
+     * Checks if a position is 'close' to a given location, without creating a LongLat.
+     *
+     * @param longitude   of the position.
+     * @param latitude    of the position.
+     * @param destination the location for which we want to check if we are close to.
+     * @return true if the location is regarded as 'close' to the position.
+     */
+    public static boolean closeTo(double longitude, double latitude, LongLat destination) {
+        return distanceTo(longitude, latitude, destination) < CLOSE_TO_DISTANCE;
     }
 
     /**
      * Moves to a new location given an angle, or remains stationary by hovering.
      * The amount moved in the direction is set by a class constant in degrees.
+     * The change in each coordinate is looked up from tables computed once for every legal angle.
      *
      * @param angle if the angle is from 0 to 350 and a multiple of 10 then the drone moves, for -999 it hovers.
      * @return the new location of drone, even if it is hovering.
@@ -98,8 +165,9 @@ public class LongLat {
      */
     public LongLat nextPosition(int angle) {
         if (angle >= MIN_ANGLE && angle <= MAX_ANGLE && angle % ANGLE_INTERVAL == 0) {
-            double newLongitude = this.getLongitude() + (Math.cos(Math.toRadians(angle)) * STRAIGHT_LINE_DISTANCE);
-            double newLatitude = this.getLatitude() + (Math.sin(Math.toRadians(angle)) * STRAIGHT_LINE_DISTANCE);
+            int i = (angle - MIN_ANGLE) / ANGLE_INTERVAL;
+            double newLongitude = this.getLongitude() + STEP_LONGITUDE[i];
+            double newLatitude = this.getLatitude() + STEP_LATITUDE[i];
             return new LongLat(newLongitude, newLatitude);
 
         } else if (angle == JUNK_ANGLE) {
@@ -108,6 +176,26 @@ public class LongLat {
         throw new IllegalArgumentException("Angle given is out of bounds.");
     }
 
+    /**
+     * Change in longitude of one move.
+     *
+     * @param index of the angle, its offset from the minimum angle divided by the interval.
+     * @return change in longitude in degrees.
+     */
+    protected static double stepLongitude(int index) {
+        return STEP_LONGITUDE[index];
+    }
+
+    /**
+     * Change in latitude of one move.
+     *
+     * @param index of the angle, its offset from the minimum angle divided by the interval.
+     * @return change in latitude in degrees.
+     */
+    protected static double stepLatitude(int index) {
+        return STEP_LATITUDE[index];
+    }
+
     /**
      * Converts LongLat to a Point
      *
@@ -124,10 +212,21 @@ public class LongLat {
      * @return the magnitude of the distance in degrees.
      */
     public double manhattanDistanceTo(LongLat destination) {
-        var dx = Math.abs(this.getLongitude() - destination.getLongitude());
-        var dy = Math.abs(this.getLatitude() - destination.getLatitude());
-        return (dx + dy);
+        return manhattanDistanceTo(this.getLongitude(), this.getLatitude(), destination);
+    }
 
+    /**
+     * Calculates the distance between a position and a given location using Manhattan Distance.
+     *
+     * @param longitude   of the 'from' position.
+     * @param latitude    of the 'from' position.
+     * @param destination the 'to' location for which distance is to be calculated.
+     * @return the magnitude of the distance in degrees.
+     */
+    public static double manhattanDistanceTo(double longitude, double latitude, LongLat destination) {
+        var dx = Math.abs(longitude - destination.getLongitude());
+        var dy = Math.abs(latitude - destination.getLatitude());
+        return (dx + dy);
     }
 
     /**
@@ -136,10 +235,36 @@ public class LongLat {
      * @param destination the 'to' location for which the heuristic is to be calculated.
      * @return the heuristic calculated.
      */
-    public Double flightHeuristic(LongLat destination) {
+    public double flightHeuristic(LongLat destination) {
+        return flightHeuristic(this.getLongitude(), this.getLatitude(), destination);
+    }
+
+    /**
+     * A heuristic for distances from a position using weighted Euclidean and Manhattan distances.
+     *
+     * @param longitude   of the 'from' position.
+     * @param latitude    of the 'from' position.
+     * @param destination the 'to' location for which the heuristic is to be calculated.
+     * @return the heuristic calculated.
+     */
+    public static double flightHeuristic(double longitude, double latitude, LongLat destination) {
         var x = 0.55;
         var y = 1.60;
-        return x * manhattanDistanceTo(destination) + y * distanceTo(destination);
+        return x * manhattanDistanceTo(longitude, latitude, destination) + y * distanceTo(longitude, latitude, destination);
+    }
+
+    /**
+     * An admissible and consistent heuristic for the distance still to fly from a position.
+     * The flight may stop anywhere 'close-to' the destination, and no move covers more than its own length
+     * of the remaining distance, so this never overestimates.
+     *
+     * @param longitude   of the 'from' position.
+     * @param latitude    of the 'from' position.
+     * @param destination the 'to' location for which the heuristic is to be calculated.
+     * @return the heuristic calculated, in degrees.
+     */
+    public static double admissibleHeuristic(double longitude, double latitude, LongLat destination) {
+        return Math.max(0, distanceTo(longitude, latitude, destination) - CLOSE_TO_DISTANCE);
     }
 
     /**
@@ -148,7 +273,7 @@ public class LongLat {
      * @param target the 'to' location for which the heuristic is to be calculated.
      * @return the heuristic calculated.
      */
-    public Double tspHeuristic(LongLat target) {
+    public double tspHeuristic(LongLat target) {
         return manhattanDistanceTo(target);
     }
 
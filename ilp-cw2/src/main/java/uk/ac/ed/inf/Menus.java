@@ -47,7 +47,7 @@ public class Menus {
      *
      * @return Menus object
      */
-    public static Menus getInstance() {
+    public static synchronized Menus getInstance() {
         if (instance == null) {
             instance = new Menus();
         }
@@ -130,4 +130,8 @@ public class Menus {
         }
         return itemStops;
     }
+
+    public ArrayList<Shop> getShops() {
+        return this.shops;
+    }
 }
@@ -0,0 +1,157 @@
+package uk.ac.ed.inf;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of whether a move from a lattice position at a given angle crosses the no-fly zones.
+ * Searches started from the same place, such as each row of the route matrix, expand the same positions,
+ * so their outgoing moves are only tested once.
+ * Each slot is a run of primitive words holding one verdict, simply overwritten by the next move hashed to it, so
+ * a miss allocates nothing. The first word of a slot counts its writes and is odd while one is under way: a writer
+ * claims the slot by making it odd, and a reader only trusts what it read if the count was even and unchanged around
+ * it, so threads share the cache without locking. A writer which finds the slot claimed leaves the verdict uncached.
+ * Verdicts are tagged with the no-fly zones' version, and are ignored once the zones change.
+ */
+public class MoveVerdictCache {
+
+    /** Number of slots, a power of two */
+    private static final int CAPACITY = 1 << 18;
+
+    /** Words per slot: the write count, the start's x and y, then the rest of the verdict packed into one */
+    private static final int SLOT_WORDS = 4;
+
+    /** Offsets of each word within a slot */
+    private static final int COUNT = 0, X = 1, Y = 2, VERDICT = 3;
+
+    /** Bit set in every verdict word, so an empty slot never matches */
+    private static final long FILLED = 1L << 31;
+
+    /** Pointer to instance */
+    private static MoveVerdictCache instance = null;
+
+    /** Instance of No-Fly zones, which verdicts are worked out from */
+    private final NoFlyZones myNoFlyZones = NoFlyZones.getInstance();
+
+    /** Words of every slot, one slot after another */
+    private final AtomicLongArray slots = new AtomicLongArray(CAPACITY * SLOT_WORDS);
+
+    /** Lookups answered from the cache */
+    private final LongAdder hits = new LongAdder();
+
+    /** Lookups which needed a test */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Uses a singleton pattern, so it has a private constructor.
+     */
+    private MoveVerdictCache() {
+    }
+
+    /**
+     * Get the instance of MoveVerdictCache
+     * Will be created if it doesn't exist
+     *
+     * @return MoveVerdictCache object
+     */
+    public static synchronized MoveVerdictCache getInstance() {
+        if (instance == null) {
+            instance = new MoveVerdictCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Check if a move crosses the no-fly zones, testing it only if its verdict is not already cached.
+     *
+     * @param x          lattice x coordinate of the start.
+     * @param y          lattice y coordinate of the start.
+     * @param angleIndex index of the move's angle.
+     * @param x1         longitude of the start.
+     * @param y1         latitude of the start.
+     * @param x2         longitude of the end.
+     * @param y2         latitude of the end.
+     * @return true if the move would intersect the no-fly zones.
+     */
+    public boolean isBlocked(long x, long y, int angleIndex, double x1, double y1, double x2, double y2) {
+        var zones = myNoFlyZones.getSnapshot(); //one snapshot, so a verdict always matches its tag.
+        int version = zones.getVersion();
+        int base = slotOf(x, y, angleIndex) * SLOT_WORDS;
+        long tag = pack(angleIndex, version, false);
+
+        long count = slots.get(base + COUNT);
+        if ((count & 1) == 0) {
+            long cachedX = slots.get(base + X);
+            long cachedY = slots.get(base + Y);
+            long verdict = slots.get(base + VERDICT);
+            if (cachedX == x && cachedY == y && (verdict & ~1L) == tag && slots.get(base + COUNT) == count) {
+                hits.increment();
+                return (verdict & 1) != 0;
+            }
+        }
+
+        misses.increment();
+        boolean blocked = zones.doesIntersectNoFly(x1, y1, x2, y2);
+        count = slots.get(base + COUNT);
+        if ((count & 1) == 0 && slots.compareAndSet(base + COUNT, count, count + 1)) {
+            slots.set(base + X, x);
+            slots.set(base + Y, y);
+            slots.set(base + VERDICT, pack(angleIndex, version, blocked));
+            slots.set(base + COUNT, count + 2);
+        }
+        return blocked;
+    }
+
+    /**
+     * Pack everything about a verdict but where the move starts into one word.
+     *
+     * @param angleIndex index of the move's angle.
+     * @param version    of the no-fly zones the move was tested against.
+     * @param blocked    true if the move crosses the no-fly zones.
+     * @return the version in the high half, then the filled bit, the angle index and the verdict in the lowest bit.
+     */
+    private static long pack(int angleIndex, int version, boolean blocked) {
+        return ((long) version << 32) | FILLED | ((long) angleIndex << 1) | (blocked ? 1 : 0);
+    }
+
+    /**
+     * Hash a move into a slot.
+     *
+     * @return slot for the move.
+     */
+    private static int slotOf(long x, long y, int angleIndex) {
+        long h = x * 0x9E3779B97F4A7C15L + y * 0xC2B2AE3D27D4EB4FL + angleIndex;
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        h ^= h >>> 32;
+        return (int) h & (CAPACITY - 1);
+    }
+
+    /**
+     * Set the counters back to zero, so they cover only what follows. Cached verdicts are kept.
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Override toString to give the counters, for diagnostics.
+     *
+     * @return String of the hit and miss counters.
+     */
+    @Override
+    public String toString() {
+        long h = getHits();
+        long m = getMisses();
+        return String.format("hits: %d, misses: %d (%.1f%% hit rate)", h, m, h + m == 0 ? 0 : 100.0 * h / (h + m));
+    }
+}
@@ -18,18 +18,14 @@ public class NoFlyZones {
     /** Pointer to instance */
     private static NoFlyZones instance = null;
 
-    /** Parsed no-fly zones as a FeatureCollection */
-    private final FeatureCollection NoFlyZones;
-
-    /** Parsed no-fly zones as Polygons for use in edge detection */
-    private final ArrayList<Polygon> NoFlyZonesPoly;
+    /** The zones and everything derived from them, replaced whole whenever they change */
+    private volatile Snapshot snapshot;
 
     /**
      * Uses a singleton pattern, so it has a private constructor.
      */
     private NoFlyZones() {
-        this.NoFlyZones = fetchNoFlyZones();
-        this.NoFlyZonesPoly = fetchNoFlyZonesPolygons();
+        this.snapshot = new Snapshot(fetchNoFlyZones(), 0);
     }
 
     /**
@@ -38,19 +34,28 @@ public class NoFlyZones {
      *
      * @return NoFlyZones object
      */
-    public static NoFlyZones getInstance() {
+    public static synchronized NoFlyZones getInstance() {
         if (instance == null) {
             instance = new NoFlyZones();
         }
         return instance;
     }
 
+    /**
+     * Fetch the no-fly zones from the server again, in case they have changed.
+     * Moves on to a new version, even if the zones are the same. The new zones are published in a single write,
+     * so a reader sees either the old zones with the old version or the new zones with the new version.
+     */
+    public synchronized void refresh() {
+        this.snapshot = new Snapshot(fetchNoFlyZones(), snapshot.version + 1);
+    }
+
     /**
      * Connects to server as given in config to retrieve the NoFlyZone
      *
      * @return FeatureCollection of NoFlyZones from JSON
      */
-    private FeatureCollection fetchNoFlyZones() {
+    private static FeatureCollection fetchNoFlyZones() {
         String nfzURL = ServerIO.URLFromPath(SERVER_PATH_TO_NFZ);
         String response = ServerIO.getRequest(nfzURL); //get an unparsed response from server
 
@@ -61,32 +66,61 @@ public class NoFlyZones {
      * Parses already fetched NoFlyZone into a collection of Polygons.
      * Used for checking intersections.
      *
+     * @param zones fetched from the server.
      * @return a collection (arraylist) of Polygons.
      */
-    private ArrayList<Polygon> fetchNoFlyZonesPolygons() {
-        assert this.NoFlyZones.features() != null;
+    private static ArrayList<Polygon> toPolygons(FeatureCollection zones) {
+        assert zones.features() != null;
         ArrayList<Polygon> polys = new ArrayList<>(); //add all polygons to arraylist
-        for (var feature : this.NoFlyZones.features()) {
+        for (var feature : zones.features()) {
             polys.add((Polygon) feature.geometry());
         }
         return polys;
     }
 
-
     /**
      * Checks if the line formed by two points intersects any member of the NoFlyZone.
+     * Uses the spatial index, so only edges near the line are tested.
      *
      * @param start       point of current location
      * @param destination point of desired destination
      * @return true if the move (line formed) would intersect the NoFlyZone
      */
     public boolean doesIntersectNoFly(Point start, Point destination) {
+        return doesIntersectNoFly(start.longitude(), start.latitude(), destination.longitude(), destination.latitude());
+    }
+
+    /**
+     * Checks if the line between two coordinates intersects any member of the NoFlyZone.
+     * Takes raw coordinates, so nothing needs to be allocated.
+     * Lines far from every edge are accepted using the clearance field, without testing.
+     *
+     * @param startLongitude       longitude of current location.
+     * @param startLatitude        latitude of current location.
+     * @param destinationLongitude longitude of desired destination.
+     * @param destinationLatitude  latitude of desired destination.
+     * @return true if the move would intersect the NoFlyZone
+     */
+    public boolean doesIntersectNoFly(double startLongitude, double startLatitude,
+                                      double destinationLongitude, double destinationLatitude) {
+        return snapshot.doesIntersectNoFly(startLongitude, startLatitude, destinationLongitude, destinationLatitude);
+    }
+
+    /**
+     * Checks if the line formed by two points intersects any member of the NoFlyZone, by testing every edge.
+     * Kept to check and measure the spatial index against.
+     *
+     * @param start       point of current location
+     * @param destination point of desired destination
+     * @return true if the move (line formed) would intersect the NoFlyZone
+     */
+    public boolean doesIntersectNoFlyLinear(Point start, Point destination) {
 
         //build line
         var lineToCheck = new Line2D.Double(start.longitude(), start.latitude(),
                 destination.longitude(), destination.latitude());
 
-        for (var x : this.NoFlyZonesPoly) {
+        for (var x : snapshot.polygons) {
             for (int i = 0; i < x.coordinates().get(0).size() - 1; i++) {
 
                 //make a new line from each member
@@ -104,4 +138,135 @@ public class NoFlyZones {
         }
         return false;
     }
+
+    /**
+     * Get the current zones and everything derived from them, for a caller which needs several of them to agree.
+     *
+     * @return the current snapshot.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public ClearanceField getClearance() {
+        return snapshot.getClearance();
+    }
+
+    public CorridorGrid getCorridors() {
+        return snapshot.getCorridors();
+    }
+
+    public NoFlyZonesIndex getIndex() {
+        return snapshot.index;
+    }
+
+    public VisibilityGraph getVisibility() {
+        return snapshot.getVisibility();
+    }
+
+    public int getVersion() {
+        return snapshot.version;
+    }
+
+    /**
+     * One version of the no-fly zones and the structures derived from them, never changed once published.
+     * The edge index is built at once, as every check uses it. The clearance field, corridor grid and visibility
+     * graph are each built the first time they are asked for, from this snapshot's polygons.
+     */
+    public static class Snapshot {
+        /** Version of the zones, incremented on every refresh */
+        private final int version;
+
+        /** Parsed no-fly zones as Polygons for use in edge detection */
+        private final ArrayList<Polygon> polygons;
+
+        /** Spatial index over the edges of the polygons */
+        private final NoFlyZonesIndex index;
+
+        /** Distance to the nearest edge across the confinement area, null until first asked for */
+        private volatile ClearanceField clearance;
+
+        /** Coarse grid of squares the zones overlap, null until first asked for */
+        private volatile CorridorGrid corridors;
+
+        /** Which corners of the zones can see each other, null until first asked for */
+        private volatile VisibilityGraph visibility;
+
+        /**
+         * Build a snapshot of fetched zones.
+         *
+         * @param zones   fetched from the server.
+         * @param version of the zones.
+         */
+        private Snapshot(FeatureCollection zones, int version) {
+            this.version = version;
+            this.polygons = toPolygons(zones);
+            this.index = new NoFlyZonesIndex(polygons);
+        }
+
+        /**
+         * Checks if the line between two coordinates intersects any member of these zones.
+         * Lines far from every edge are accepted using the clearance field, without testing.
+         *
+         * @param startLongitude       longitude of current location.
+         * @param startLatitude        latitude of current location.
+         * @param destinationLongitude longitude of desired destination.
+         * @param destinationLatitude  latitude of desired destination.
+         * @return true if the move would intersect the NoFlyZone
+         */
+        public boolean doesIntersectNoFly(double startLongitude, double startLatitude,
+                                          double destinationLongitude, double destinationLatitude) {
+            if (getClearance().isClear(startLongitude, startLatitude, destinationLongitude, destinationLatitude)) {
+                return false;
+            }
+            return index.doesIntersect(startLongitude, startLatitude, destinationLongitude, destinationLatitude);
+        }
+
+        public ClearanceField getClearance() {
+            var field = clearance;
+            if (field == null) {
+                synchronized (this) {
+                    if (clearance == null) {
+                        clearance = new ClearanceField(polygons);
+                    }
+                    field = clearance;
+                }
+            }
+            return field;
+        }
+
+        public CorridorGrid getCorridors() {
+            var grid = corridors;
+            if (grid == null) {
+                synchronized (this) {
+                    if (corridors == null) {
+                        corridors = new CorridorGrid(polygons);
+                    }
+                    grid = corridors;
+                }
+            }
+            return grid;
+        }
+
+        public VisibilityGraph getVisibility() {
+            var graph = visibility;
+            if (graph == null) {
+                synchronized (this) {
+                    if (visibility == null) {
+                        visibility = new VisibilityGraph(polygons);
+                    }
+                    graph = visibility;
+                }
+            }
+            return graph;
+        }
+
+        public NoFlyZonesIndex getIndex() {
+            return index;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+    }
 }
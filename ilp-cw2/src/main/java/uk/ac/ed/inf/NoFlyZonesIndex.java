@@ -0,0 +1,272 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.util.List;
+
+/**
+ * Spatial index over the edges of the no-fly zones, so a move is only tested against the edges near it.
+ * The area covered by the zones is split into a uniform grid of squares one move wide, and each square
+ * lists every edge whose bounding box touches it. Each polygon's bounding box is also kept, so edges of
+ * a polygon the move cannot reach are passed over without a test.
+ * Edges are copied once into flat arrays of coordinates, so a query reads no GeoJSON and allocates nothing.
+ * An index is never changed once built, so it can be shared between threads.
+ */
+public class NoFlyZonesIndex {
+
+    /** Width and height of each grid square in degrees, the length of one move */
+    private static final double CELL_SIZE = LongLat.STRAIGHT_LINE_DISTANCE;
+
+    /** Margin added around a query, so edges merely touching the line after rounding are still tested */
+    private static final double PAD = 1E-12;
+
+    /** Polygon each edge belongs to */
+    private final int[] edgePolygon;
+
+    /** Longitude of the first vertex of each edge */
+    private final double[] edgeX1;
+
+    /** Latitude of the first vertex of each edge */
+    private final double[] edgeY1;
+
+    /** Longitude of the second vertex of each edge */
+    private final double[] edgeX2;
+
+    /** Latitude of the second vertex of each edge */
+    private final double[] edgeY2;
+
+    /** Bounding box of each polygon, four entries each as west, south, east, north */
+    private final double[] polygonBounds;
+
+    /** Longitude of the west side of the grid */
+    private final double west;
+
+    /** Latitude of the south side of the grid */
+    private final double south;
+
+    /** Number of grid columns */
+    private final int cols;
+
+    /** Number of grid rows */
+    private final int rows;
+
+    /** Start of each square's edges in cellEdges, with one extra entry marking the end of the last */
+    private final int[] cellStart;
+
+    /** Edges touching each square, square after square */
+    private final int[] cellEdges;
+
+    /**
+     * Build an index over every edge of every polygon.
+     *
+     * @param polygons no-fly zones to index.
+     */
+    public NoFlyZonesIndex(List<Polygon> polygons) {
+        int edgeCount = 0;
+        for (var poly : polygons) {
+            edgeCount += poly.coordinates().get(0).size() - 1;
+        }
+        this.edgePolygon = new int[edgeCount];
+        this.edgeX1 = new double[edgeCount];
+        this.edgeY1 = new double[edgeCount];
+        this.edgeX2 = new double[edgeCount];
+        this.edgeY2 = new double[edgeCount];
+        this.polygonBounds = new double[polygons.size() * 4];
+
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int e = 0;
+        for (int p = 0; p < polygons.size(); p++) {
+            var ring = polygons.get(p).coordinates().get(0);
+            double[] bounds = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+            for (int i = 0; i < ring.size(); i++) {
+                bounds[0] = Math.min(bounds[0], ring.get(i).longitude());
+                bounds[1] = Math.min(bounds[1], ring.get(i).latitude());
+                bounds[2] = Math.max(bounds[2], ring.get(i).longitude());
+                bounds[3] = Math.max(bounds[3], ring.get(i).latitude());
+                if (i < ring.size() - 1) {
+                    edgePolygon[e] = p;
+                    edgeX1[e] = ring.get(i).longitude();
+                    edgeY1[e] = ring.get(i).latitude();
+                    edgeX2[e] = ring.get(i + 1).longitude();
+                    edgeY2[e] = ring.get(i + 1).latitude();
+                    e++;
+                }
+            }
+            System.arraycopy(bounds, 0, polygonBounds, p * 4, 4);
+            minX = Math.min(minX, bounds[0]);
+            minY = Math.min(minY, bounds[1]);
+            maxX = Math.max(maxX, bounds[2]);
+            maxY = Math.max(maxY, bounds[3]);
+        }
+
+        if (edgeCount == 0) { //nothing to index, every query misses the grid.
+            minX = minY = 0;
+            maxX = maxY = -1;
+        }
+        this.west = minX;
+        this.south = minY;
+        this.cols = Math.max(1, colOf(maxX) + 1);
+        this.rows = Math.max(1, rowOf(maxY) + 1);
+
+        //count the edges in each square, then fill them in.
+        this.cellStart = new int[cols * rows + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            forEachCell(i, cell -> cellStart[cell + 1]++);
+        }
+        for (int cell = 0; cell < cols * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        this.cellEdges = new int[cellStart[cols * rows]];
+        int[] filled = new int[cols * rows];
+        for (int i = 0; i < edgeCount; i++) {
+            final int edge = i;
+            forEachCell(i, cell -> cellEdges[cellStart[cell] + filled[cell]++] = edge);
+        }
+    }
+
+    /**
+     * Action to take on a grid square.
+     */
+    private interface CellAction {
+        void apply(int cell);
+    }
+
+    /**
+     * Visit every grid square touched by the bounding box of an edge.
+     *
+     * @param edge   to visit the squares of.
+     * @param action to take on each square.
+     */
+    private void forEachCell(int edge, CellAction action) {
+        int c0 = colOf(Math.min(edgeX1[edge], edgeX2[edge]));
+        int c1 = colOf(Math.max(edgeX1[edge], edgeX2[edge]));
+        int r0 = rowOf(Math.min(edgeY1[edge], edgeY2[edge]));
+        int r1 = rowOf(Math.max(edgeY1[edge], edgeY2[edge]));
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                action.apply(r * cols + c);
+            }
+        }
+    }
+
+    private int colOf(double longitude) {
+        return (int) Math.floor((longitude - west) / CELL_SIZE);
+    }
+
+    private int rowOf(double latitude) {
+        return (int) Math.floor((latitude - south) / CELL_SIZE);
+    }
+
+    /**
+     * Checks if the line formed by two points intersects any edge of the no-fly zones.
+     *
+     * @param start       point of current location
+     * @param destination point of desired destination
+     * @return true if the move (line formed) would intersect the no-fly zones
+     */
+    public boolean doesIntersect(Point start, Point destination) {
+        return doesIntersect(start.longitude(), start.latitude(), destination.longitude(), destination.latitude());
+    }
+
+    /**
+     * Checks if the line between two coordinates intersects any edge of the no-fly zones.
+     * Only edges sharing a grid square with the line's bounding box, within a polygon whose bounding box
+     * overlaps it, are tested. Any intersection point lies inside both bounding boxes, so none are missed.
+     *
+     * @param x1 longitude of current location.
+     * @param y1 latitude of current location.
+     * @param x2 longitude of desired destination.
+     * @param y2 latitude of desired destination.
+     * @return true if the move would intersect the no-fly zones
+     */
+    public boolean doesIntersect(double x1, double y1, double x2, double y2) {
+        double minX = Math.min(x1, x2) - PAD;
+        double maxX = Math.max(x1, x2) + PAD;
+        double minY = Math.min(y1, y2) - PAD;
+        double maxY = Math.max(y1, y2) + PAD;
+
+        int c0 = Math.max(0, colOf(minX));
+        int c1 = Math.min(cols - 1, colOf(maxX));
+        int r0 = Math.max(0, rowOf(minY));
+        int r1 = Math.min(rows - 1, rowOf(maxY));
+        if (c0 > c1 || r0 > r1) { //nowhere near any zone.
+            return false;
+        }
+
+        for (int r = r0; r <= r1; r++) {
+            for (int c = c0; c <= c1; c++) {
+                int cell = r * cols + c;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int edge = cellEdges[k];
+                    int b = edgePolygon[edge] * 4;
+                    if (maxX < polygonBounds[b] || maxY < polygonBounds[b + 1] ||
+                            minX > polygonBounds[b + 2] || minY > polygonBounds[b + 3]) {
+                        continue;
+                    }
+
+                    double ex1 = edgeX1[edge], ey1 = edgeY1[edge], ex2 = edgeX2[edge], ey2 = edgeY2[edge];
+                    //tested both ways round, as the linear scan does, so rounding gives the same verdicts.
+                    if (segmentsIntersect(ex1, ey1, ex2, ey2, x1, y1, x2, y2) ||
+                            segmentsIntersect(x1, y1, x2, y2, ex1, ey1, ex2, ey2)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if two line segments intersect, including touching and overlapping.
+     * Same arithmetic as Line2D.linesIntersect, so verdicts match it exactly.
+     *
+     * @return true if segment (x1, y1)-(x2, y2) intersects segment (x3, y3)-(x4, y4).
+     */
+    private static boolean segmentsIntersect(double x1, double y1, double x2, double y2,
+                                             double x3, double y3, double x4, double y4) {
+        return orientation(x1, y1, x2, y2, x3, y3) * orientation(x1, y1, x2, y2, x4, y4) <= 0
+                && orientation(x3, y3, x4, y4, x1, y1) * orientation(x3, y3, x4, y4, x2, y2) <= 0;
+    }
+
+    /**
+     * Which side of a segment a point lies on, as in Line2D.relativeCCW.
+     * A point in line with the segment is on it (0) if it is between the ends, otherwise beyond one end.
+     *
+     * @return 1 if the point is counter-clockwise of the segment, -1 if clockwise, 0 if on it.
+     */
+    private static int orientation(double x1, double y1, double x2, double y2, double px, double py) {
+        x2 -= x1;
+        y2 -= y1;
+        px -= x1;
+        py -= y1;
+        double ccw = px * y2 - py * x2;
+        if (ccw == 0.0) { //in line, so project onto the segment.
+            ccw = px * x2 + py * y2;
+            if (ccw > 0.0) {
+                px -= x2;
+                py -= y2;
+                ccw = px * x2 + py * y2;
+                if (ccw < 0.0) {
+                    ccw = 0.0;
+                }
+            }
+        }
+        return (ccw < 0.0) ? -1 : ((ccw > 0.0) ? 1 : 0);
+    }
+
+    /**
+     * Number of edges listed across all grid squares, an edge is counted once for each square it touches.
+     *
+     * @return total size of the square lists.
+     */
+    public int getCellEntries() {
+        return cellEdges.length;
+    }
+
+    public int getEdgeCount() {
+        return edgePolygon.length;
+    }
+}
@@ -0,0 +1,112 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * Admissible heuristic which knows about the buildings, for one search towards one target.
+ * The distance around the no-fly zones is looked up in the visibility graph from the centre of the square holding
+ * a position, and lowered by the most the position can be from that centre. It is only used in squares clear of
+ * every edge, where the straight line to the centre is flyable, and only towards targets further than 'close-to'
+ * from every edge, so that stopping anywhere 'close-to' the target saves at most the 'close-to' distance.
+ * The result is then rounded up to whole moves, as no route is a fraction of a move long.
+ * Distances from each square are worked out when first asked for and stored as floats, rounded down. Threads
+ * racing to fill a square store the same value, so one heuristic can be shared between searches.
+ */
+public class ObstacleHeuristic {
+
+    /** Allowance for rounding when rounding up to whole moves */
+    private static final double ROUNDING = 1E-9;
+
+    /** Graph of which corners see each other */
+    private final VisibilityGraph graph;
+
+    /** Distance to the nearest edge, to tell where the graph may be used */
+    private final ClearanceField clearance;
+
+    /** Location to end 'close-to' */
+    private final LongLat target;
+
+    /** Distance from each corner of the graph to the target */
+    private final double[] fromCorners;
+
+    /** Distance from the centre of each square to the target, NaN until first asked for */
+    private final float[] fromCells;
+
+    /** False if the target is too near a building for the graph to be used */
+    private final boolean usable;
+
+    /**
+     * Prepare the heuristic for a search, finding the distance from every corner to the target.
+     *
+     * @param noFlyZones to go around.
+     * @param target     location to end 'close-to'.
+     */
+    public ObstacleHeuristic(NoFlyZones noFlyZones, LongLat target) {
+        this(noFlyZones.getSnapshot(), target);
+    }
+
+    /**
+     * Prepare the heuristic for one version of the no-fly zones.
+     *
+     * @param zones  version of the no-fly zones to go around.
+     * @param target location to end 'close-to'.
+     */
+    public ObstacleHeuristic(NoFlyZones.Snapshot zones, LongLat target) {
+        this.graph = zones.getVisibility();
+        this.clearance = zones.getClearance();
+        this.target = target;
+        this.usable = clearance.clearanceAt(target.getLongitude(), target.getLatitude()) > LongLat.CLOSE_TO_DISTANCE;
+        this.fromCorners = usable ? graph.distancesTo(target.getLongitude(), target.getLatitude()) : null;
+        this.fromCells = new float[usable ? graph.getCellCount() : 0];
+        Arrays.fill(fromCells, Float.NaN);
+    }
+
+    /**
+     * Estimate the distance still to fly from a position, never overestimating.
+     *
+     * @param longitude of the position.
+     * @param latitude  of the position.
+     * @return the estimate in degrees, a whole number of moves.
+     */
+    public double estimate(double longitude, double latitude) {
+        return minMoves(longitude, latitude) * LongLat.STRAIGHT_LINE_DISTANCE;
+    }
+
+    /**
+     * Fewest moves which could possibly reach the target from a position.
+     *
+     * @param longitude of the position.
+     * @param latitude  of the position.
+     * @return a number of moves never more than the real route needs.
+     */
+    public int minMoves(double longitude, double latitude) {
+        double distance = LongLat.distanceTo(longitude, latitude, target);
+        if (usable && clearance.clearanceAt(longitude, latitude) > 0) {
+            int cell = graph.cellOf(longitude, latitude);
+            float around = fromCells[cell];
+            if (Float.isNaN(around)) {
+                double x = graph.cellLongitude(cell);
+                double y = graph.cellLatitude(cell);
+                double exact = graph.distanceFromCell(cell, target.getLongitude(), target.getLatitude(), fromCorners,
+                        graph.isVisible(x, y, target.getLongitude(), target.getLatitude()));
+                around = (float) exact;
+                if (around > exact) {
+                    around = Math.nextDown(around); //never round up, or the estimate could be too high.
+                }
+                fromCells[cell] = around;
+            }
+            if (around != Float.POSITIVE_INFINITY) {
+                distance = Math.max(distance, around - VisibilityGraph.cellRadius());
+            }
+        }
+        double remaining = distance - LongLat.CLOSE_TO_DISTANCE;
+        if (remaining <= 0) {
+            return 0;
+        }
+        return (int) Math.ceil(remaining / LongLat.STRAIGHT_LINE_DISTANCE - ROUNDING);
+    }
+
+    public LongLat getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,45 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Builds the day's path by solving the orienteering problem: choosing the orders which collect the most pence
+ * within the moves allowed, rather than taking orders greedily and dropping whatever does not fit at the end.
+ * Starts from the improved greedy permutation, and anneals for a time budget on the exact move counts between orders.
+ */
+public class OrienteeringPathBuilder extends PathBuilder {
+
+    /** Time the solver may take in milliseconds */
+    private final long solverBudgetMillis;
+
+    /**
+     * Construct by providing today's orders and how long the solver may take.
+     *
+     * @param todaysOrders       order handler for today's orders.
+     * @param solverBudgetMillis time the solver may take in milliseconds, 0 to only fill any room left.
+     */
+    public OrienteeringPathBuilder(OrderHandler todaysOrders, long solverBudgetMillis) {
+        super(todaysOrders);
+        this.solverBudgetMillis = solverBudgetMillis;
+    }
+
+    /**
+     * Choose the orders to deliver with the orienteering solver, followed by every order it left out. Only the orders
+     * chosen are flown, and those left out are counted as lost.
+     *
+     * @return ArrayList of every order, those chosen first in the order they will be flown.
+     */
+    @Override
+    protected ArrayList<String> choosePerm() {
+        int[] perm = indexesOf(super.choosePerm());
+        var values = orderValues();
+        var improver = new TourImprover(getMoveMatrix(), getHomeMoves(), MOVES_ALLOWED);
+        int[] initial = Arrays.copyOf(perm, improver.fittingPrefix(perm));
+
+        var solver = new OrienteeringSolver(getMoveMatrix(), getHomeMoves(), values, MOVES_ALLOWED);
+        int[] chosen = solver.solve(initial, solverBudgetMillis * 1_000_000);
+        System.out.println("ORIENTEERING: " + solver);
+        return chosenFirst(chosen);
+    }
+}
@@ -0,0 +1,365 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Simulated annealing for choosing which orders to deliver: the orienteering problem of collecting the most pence
+ * within the move budget, starting and ending at Appleton Tower.
+ * A solution is the sequence of orders delivered. Each step proposes inserting an order not delivered, removing one,
+ * swapping one for an order not delivered, or moving one elsewhere in the sequence. Every proposal is checked in O(1)
+ * from the exact move counts between orders, and one which would break the budget is never accepted.
+ * Proposals are scored on pence gained, with a tiny allowance per move so that a shorter tour wins a tie, and worse
+ * proposals are accepted with a chance which falls as the time budget runs out.
+ * Both the starting sequence and the best sequence annealing finds are polished, by shortening them with 2-opt and
+ * Or-opt and inserting any order which then fits, and the better is kept, so more time never gives a worse answer.
+ */
+public class OrienteeringSolver {
+
+    /** Proposals between checks of the clock, as reading it is not free */
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+
+    /** Seed for choosing proposals, so that a run with the same time budget makes the same choices */
+    private static final long SEED = 2021;
+
+    /** Starting temperature, as a fraction of the average order's value */
+    private static final double START_TEMPERATURE = 0.5;
+
+    /** Final temperature, as a fraction of the starting temperature */
+    private static final double END_TEMPERATURE = 1E-3;
+
+    /** Stands for the start before the first order, or home after the last */
+    private static final int ENDPOINT = -1;
+
+    /** Moves to go to each order from each order, or from the start */
+    private final TourMatrix moves;
+
+    /** Moves to fly home from each order */
+    private final double[] home;
+
+    /** Value of each order in pence */
+    private final int[] values;
+
+    /** Moves the drone may make */
+    private final int budget;
+
+    /** Pence worth giving up to save a move, small enough that no order is ever given up for moves */
+    private final double moveValue;
+
+    /** Orders delivered, in the order they are flown */
+    private final int[] route;
+
+    /** Orders not delivered */
+    private final int[] outside;
+
+    /** Number of orders delivered */
+    private int length = 0;
+
+    /** Moves the current sequence takes, including flying home */
+    private double used = 0;
+
+    /** Pence the current sequence collects */
+    private long value = 0;
+
+    /** Number of proposals checked */
+    private long proposals = 0;
+
+    /** Number of proposals accepted */
+    private long accepted = 0;
+
+    /** Time spent annealing in nanoseconds */
+    private long annealNanos = 0;
+
+    /**
+     * Create a solver for one day's orders.
+     *
+     * @param moves  to go to each order, from each order or from the start.
+     * @param home   moves to fly home from each order.
+     * @param values of each order in pence.
+     * @param budget moves the drone may make.
+     */
+    public OrienteeringSolver(TourMatrix moves, double[] home, int[] values, int budget) {
+        this.moves = moves;
+        this.home = home;
+        this.values = values;
+        this.budget = budget;
+        this.route = new int[values.length];
+        this.outside = new int[values.length];
+
+        int smallest = Integer.MAX_VALUE;
+        for (int v : values) {
+            smallest = Math.min(smallest, v);
+        }
+        this.moveValue = values.length == 0 ? 0 : Math.max(smallest, 1) / (2.0 * budget + 2);
+    }
+
+    /**
+     * Cost of one leg of the tour.
+     *
+     * @param from order to go from, or ENDPOINT for the start.
+     * @param to   order to go to, or ENDPOINT for home.
+     * @return moves for the leg.
+     */
+    private double cost(int from, int to) {
+        if (from == ENDPOINT) {
+            return to == ENDPOINT ? 0 : moves.getStartWeight(to);
+        }
+        return to == ENDPOINT ? home[from] : moves.getWeight(from, to);
+    }
+
+    /**
+     * Order at a position of the sequence, or ENDPOINT before the first and after the last.
+     *
+     * @param position in the sequence.
+     * @return index of the order.
+     */
+    private int at(int position) {
+        return position < 0 || position >= length ? ENDPOINT : route[position];
+    }
+
+    /**
+     * Find the most valuable sequence of orders that fits within the budget, in the time allowed.
+     *
+     * @param initial     sequence of orders to start from, which must fit within the budget.
+     * @param budgetNanos time allowed for annealing, in nanoseconds.
+     * @return the best sequence found, in the order to fly it.
+     */
+    public int[] solve(int[] initial, long budgetNanos) {
+        int[] start = polish(initial);
+        double startScore = value - moveValue * used;
+        polish(anneal(budgetNanos));
+        if (value - moveValue * used < startScore) {
+            load(start); //annealing found nothing better than where it began.
+        }
+        return Arrays.copyOf(route, length);
+    }
+
+    /**
+     * Shorten a sequence with 2-opt and Or-opt, then insert any order which fits, and make it the current one.
+     *
+     * @param sequence of orders delivered, which must fit within the budget.
+     * @return the polished sequence.
+     */
+    private int[] polish(int[] sequence) {
+        load(new TourImprover(moves, home, budget).improve(sequence));
+        fillGreedily();
+        return Arrays.copyOf(route, length);
+    }
+
+    /**
+     * Make a sequence the current one.
+     *
+     * @param sequence of orders delivered.
+     */
+    private void load(int[] sequence) {
+        boolean[] inRoute = new boolean[values.length];
+        length = 0;
+        value = 0;
+        for (int order : sequence) {
+            route[length++] = order;
+            inRoute[order] = true;
+            value += values[order];
+        }
+        int count = 0;
+        for (int order = 0; order < values.length; order++) {
+            if (!inRoute[order]) {
+                outside[count++] = order;
+            }
+        }
+        used = 0;
+        for (int p = 0; p <= length; p++) {
+            used += cost(at(p - 1), at(p));
+        }
+    }
+
+    /**
+     * Anneal from the current sequence until the time budget runs out.
+     *
+     * @param budgetNanos time allowed, in nanoseconds.
+     * @return the best sequence seen.
+     */
+    private int[] anneal(long budgetNanos) {
+        long t0 = System.nanoTime();
+        var random = new SplittableRandom(SEED);
+        double total = 0;
+        for (int v : values) {
+            total += v;
+        }
+        double startTemperature = values.length == 0 ? 0 : START_TEMPERATURE * total / values.length;
+        double temperature = startTemperature;
+
+        int[] best = Arrays.copyOf(route, length);
+        double bestScore = value - moveValue * used;
+        while (budgetNanos > 0) {
+            if (proposals % CLOCK_CHECK_INTERVAL == 0) {
+                double elapsed = (System.nanoTime() - t0) / (double) budgetNanos;
+                if (elapsed >= 1) {
+                    break;
+                }
+                temperature = startTemperature * Math.pow(END_TEMPERATURE, elapsed);
+            }
+            proposals++;
+            if (propose(random, temperature)) {
+                accepted++;
+                double score = value - moveValue * used;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = Arrays.copyOf(route, length);
+                }
+            }
+        }
+        annealNanos = System.nanoTime() - t0;
+        return best;
+    }
+
+    /**
+     * Propose one random change, and make it if it fits within the budget and is accepted.
+     *
+     * @param random      source of the proposal.
+     * @param temperature current willingness to accept a worse sequence, in pence.
+     * @return true if the change was made.
+     */
+    private boolean propose(SplittableRandom random, double temperature) {
+        int outsideCount = values.length - length;
+        int kind = random.nextInt(4);
+        if (kind == 0 && outsideCount > 0) { //insert an order not delivered.
+            int o = random.nextInt(outsideCount);
+            int x = outside[o];
+            int gap = random.nextInt(length + 1);
+            int a = at(gap - 1);
+            int b = at(gap);
+            double delta = cost(a, x) + cost(x, b) - cost(a, b);
+            if (accept(values[x], delta, random, temperature)) {
+                outside[o] = outside[outsideCount - 1];
+                System.arraycopy(route, gap, route, gap + 1, length - gap);
+                route[gap] = x;
+                length++;
+                value += values[x];
+                used += delta;
+                return true;
+            }
+        } else if (kind == 1 && length > 0) { //remove an order.
+            int p = random.nextInt(length);
+            int x = route[p];
+            int prev = at(p - 1);
+            int next = at(p + 1);
+            double delta = cost(prev, next) - cost(prev, x) - cost(x, next);
+            if (accept(-values[x], delta, random, temperature)) {
+                outside[outsideCount] = x;
+                System.arraycopy(route, p + 1, route, p, length - p - 1);
+                length--;
+                value -= values[x];
+                used += delta;
+                return true;
+            }
+        } else if (kind == 2 && length > 0 && outsideCount > 0) { //swap an order for one not delivered.
+            int p = random.nextInt(length);
+            int o = random.nextInt(outsideCount);
+            int x = route[p];
+            int y = outside[o];
+            int prev = at(p - 1);
+            int next = at(p + 1);
+            double delta = cost(prev, y) + cost(y, next) - cost(prev, x) - cost(x, next);
+            if (accept(values[y] - values[x], delta, random, temperature)) {
+                route[p] = y;
+                outside[o] = x;
+                value += values[y] - values[x];
+                used += delta;
+                return true;
+            }
+        } else if (kind == 3 && length > 1) { //move an order elsewhere in the sequence.
+            int p = random.nextInt(length);
+            int gap = random.nextInt(length + 1);
+            if (gap == p || gap == p + 1) {
+                return false;
+            }
+            int x = route[p];
+            double delta = cost(at(p - 1), at(p + 1)) - cost(at(p - 1), x) - cost(x, at(p + 1))
+                    + cost(at(gap - 1), x) + cost(x, at(gap)) - cost(at(gap - 1), at(gap));
+            if (accept(0, delta, random, temperature)) {
+                if (gap < p) {
+                    System.arraycopy(route, gap, route, gap + 1, p - gap);
+                    route[gap] = x;
+                } else {
+                    System.arraycopy(route, p + 1, route, p, gap - p - 1);
+                    route[gap - 1] = x;
+                }
+                used += delta;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decide whether to make a change.
+     *
+     * @param gained      pence the change collects, negative if it loses some.
+     * @param delta       moves the change adds, negative if it saves some.
+     * @param random      source of the decision.
+     * @param temperature current willingness to accept a worse sequence, in pence.
+     * @return true if the change fits within the budget and is accepted.
+     */
+    private boolean accept(double gained, double delta, SplittableRandom random, double temperature) {
+        if (used + delta > budget) {
+            return false;
+        }
+        double score = gained - moveValue * delta;
+        return score >= 0 || (temperature > 0 && random.nextDouble() < Math.exp(score / temperature));
+    }
+
+    /**
+     * Insert orders not delivered while any fits, the most valuable first, each where it adds the fewest moves.
+     */
+    private void fillGreedily() {
+        boolean inserted = true;
+        while (inserted) {
+            inserted = false;
+            int bestOrder = -1;
+            int bestGap = -1;
+            double bestDelta = 0;
+            for (int o = 0; o < values.length - length; o++) {
+                int x = outside[o];
+                for (int gap = 0; gap <= length; gap++) {
+                    double delta = cost(at(gap - 1), x) + cost(x, at(gap)) - cost(at(gap - 1), at(gap));
+                    if (used + delta <= budget && (bestOrder < 0 || values[x] > values[outside[bestOrder]]
+                            || (values[x] == values[outside[bestOrder]] && delta < bestDelta))) {
+                        bestOrder = o;
+                        bestGap = gap;
+                        bestDelta = delta;
+                    }
+                }
+            }
+            if (bestOrder >= 0) {
+                int x = outside[bestOrder];
+                outside[bestOrder] = outside[values.length - length - 1];
+                System.arraycopy(route, bestGap, route, bestGap + 1, length - bestGap);
+                route[bestGap] = x;
+                length++;
+                value += values[x];
+                used += bestDelta;
+                inserted = true;
+            }
+        }
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public double getUsed() {
+        return used;
+    }
+
+    /**
+     * Override toString to give the search's effort, for diagnostics.
+     *
+     * @return String of the proposals checked and accepted, and their rate.
+     */
+    @Override
+    public String toString() {
+        double seconds = annealNanos / 1e9;
+        return String.format("proposals: %d, accepted: %d, rate: %.1f million/s, value: %d, moves: %.0f",
+                proposals, accepted, seconds > 0 ? proposals / seconds / 1e6 : 0, value, used);
+    }
+}
@@ -0,0 +1,440 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleBinaryOperator;
+
+/**
+ * Hash-distributed A* (HDA*) for a single route, spread over several threads.
+ * Every lattice position is owned by one worker, chosen by hashing its key, and only its owner keeps its cost,
+ * queues it or expands it. A worker sends each node it generates to the node's owner through the owner's lock-free
+ * inbox, so workers never share a queue or a table.
+ * The heuristic must be admissible. Workers keep going until no worker holds, or has been sent, a node which could
+ * lead to a shorter route than the best found, so the route found is a shortest one.
+ * Termination is detected with a single count of busy workers plus messages not yet taken in. A worker only becomes
+ * busy by taking in a message, so once the count reaches zero nothing is left to do and it stays at zero.
+ */
+public class ParallelSearch {
+
+    /** Instance of No-Fly zones to check intersection */
+    private static final NoFlyZones myNoFlyZones = NoFlyZones.getInstance();
+
+    /** Verdicts of moves already checked against the No-Fly zones, shared by every search */
+    private static final MoveVerdictCache myVerdicts = MoveVerdictCache.getInstance();
+
+    /** Multiplier spreading lattice keys evenly over the workers */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /** Scale of the increments between angles searched */
+    private final int angleIncrement;
+
+    /** Number of workers */
+    private final int threads;
+
+    /** Admissible estimate of the distance still to fly from a longitude and latitude */
+    private final DoubleBinaryOperator heuristic;
+
+    /** Nodes sent to each worker and not yet taken in */
+    private final List<ConcurrentLinkedQueue<Candidate>> inboxes = new ArrayList<>();
+
+    /** Best known route to each position owned by each worker, by lattice key */
+    private final List<HashMap<Long, Record>> tables = new ArrayList<>();
+
+    /** Busy workers plus messages not yet taken in, the search is over when it reaches zero */
+    private final AtomicInteger work = new AtomicInteger();
+
+    /** Nodes expanded by each worker */
+    private final int[] expansions;
+
+    /** Closed nodes reopened by each worker */
+    private final int[] reopenings;
+
+    /** Nodes sent to another worker by each worker */
+    private final int[] messages;
+
+    /** Exact location of the start */
+    private PathfindingNode start;
+
+    /** Location to end 'close-to' */
+    private LongLat target;
+
+    /** Cost of the shortest route found so far */
+    private volatile double bestCost = Double.MAX_VALUE;
+
+    /** Lattice key of the final node of the shortest route found so far */
+    private long bestKey;
+
+    /** Set if any worker failed, so that the others stop */
+    private volatile Throwable failure = null;
+
+    /**
+     * A node on its way to, or queued by, its owner.
+     */
+    private static class Candidate {
+
+        /** Lattice x coordinate */
+        private final long x;
+
+        /** Lattice y coordinate */
+        private final long y;
+
+        /** Cost of the route to it */
+        private final double g;
+
+        /** Cost plus heuristic */
+        private final double f;
+
+        /** Lattice key of the node before it, ignored for the start */
+        private final long parentKey;
+
+        /** Angle taken from the node before it */
+        private final int angle;
+
+        /** True for the start, which has no node before it */
+        private final boolean isStart;
+
+        private Candidate(long x, long y, double g, double f, long parentKey, int angle, boolean isStart) {
+            this.x = x;
+            this.y = y;
+            this.g = g;
+            this.f = f;
+            this.parentKey = parentKey;
+            this.angle = angle;
+            this.isStart = isStart;
+        }
+    }
+
+    /**
+     * Best known route to a position, kept only by the position's owner.
+     */
+    private static class Record {
+
+        /** Node on the best known route */
+        private Candidate best;
+
+        /** True once expanded with its best known cost */
+        private boolean closed = false;
+    }
+
+    /**
+     * Create a search.
+     *
+     * @param angleIncrement of how far apart searched angles are in degrees.
+     * @param threads        number of workers, each on its own thread.
+     * @param heuristic      admissible estimate of the distance still to fly, safe to call from any thread.
+     * @throws IllegalArgumentException if there are no workers.
+     */
+    public ParallelSearch(int angleIncrement, int threads, DoubleBinaryOperator heuristic) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one thread is needed.");
+        }
+        this.angleIncrement = angleIncrement;
+        this.threads = threads;
+        this.heuristic = heuristic;
+        this.expansions = new int[threads];
+        this.reopenings = new int[threads];
+        this.messages = new int[threads];
+        for (int i = 0; i < threads; i++) {
+            inboxes.add(new ConcurrentLinkedQueue<>());
+            tables.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Compute a shortest route from one location to another.
+     * The calling thread is the first worker, and the rest each get a thread of their own until the search ends.
+     *
+     * @param startLL location to start at.
+     * @param endLL   location to end 'close-to'.
+     * @return a collection of Pathfinding nodes, holding only the start if there is no route.
+     * @throws IllegalStateException if a worker fails or the calling thread is interrupted.
+     */
+    public List<PathfindingNode> routeTo(LongLat startLL, LongLat endLL) {
+        this.start = new PathfindingNode(startLL.getLongitude(), startLL.getLatitude());
+        this.target = endLL;
+        var first = new Candidate(start.getX(), start.getY(), 0,
+                heuristic.applyAsDouble(start.getLongitude(), start.getLatitude()), 0, LongLat.JUNK_ANGLE, true);
+        work.incrementAndGet();
+        inboxes.get(ownerOf(PathfindingLattice.key(first.x, first.y))).add(first);
+
+        var workers = new ArrayList<Thread>();
+        for (int id = 1; id < threads; id++) {
+            final int worker = id;
+            var thread = new Thread(() -> runWorker(worker), "parallel-search-" + id);
+            workers.add(thread);
+            thread.start();
+        }
+        runWorker(0);
+        try {
+            for (Thread thread : workers) {
+                thread.join();
+            }
+        } catch (InterruptedException e) {
+            failure = e;
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Parallel search failed.", failure);
+        }
+
+        if (bestCost == Double.MAX_VALUE) {
+            System.err.println("PATH COULD NOT BE FOUND");
+            start.setG(0);
+            return new ArrayList<>(List.of(start));
+        }
+        return pathTo(bestKey);
+    }
+
+    /**
+     * Run one worker until the search is over, stopping every worker if it fails.
+     *
+     * @param id of the worker.
+     */
+    private void runWorker(int id) {
+        try {
+            work(id);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+    }
+
+    /**
+     * Take in the nodes sent to a worker and expand its cheapest, until no worker has anything left to do.
+     *
+     * @param id of the worker.
+     */
+    private void work(int id) {
+        var inbox = inboxes.get(id);
+        var open = new PriorityQueue<Candidate>(Comparator.comparingDouble((Candidate c) -> c.f)
+                .thenComparingDouble(c -> -c.g)); //deepest first among equals, to reach the target sooner.
+        var neighbours = new PathfindingNeighbours();
+        boolean busy = false;
+
+        while (failure == null) {
+            Candidate received;
+            while ((received = inbox.poll()) != null) {
+                relax(id, open, received);
+                if (!busy && hasWork(id, open)) {
+                    busy = true;
+                    work.incrementAndGet(); //counted busy before the message is let go, so the count never dips.
+                }
+                work.decrementAndGet();
+            }
+            if (busy) {
+                if (hasWork(id, open)) {
+                    expand(id, open, open.poll(), neighbours);
+                } else {
+                    busy = false;
+                    work.decrementAndGet();
+                }
+            } else if (work.get() == 0) {
+                return;
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Check if a worker holds a node which could still lead to a shorter route, dropping stale entries.
+     *
+     * @param id   of the worker.
+     * @param open queue of the worker.
+     * @return true if the cheapest queued node is worth expanding.
+     */
+    private boolean hasWork(int id, PriorityQueue<Candidate> open) {
+        var table = tables.get(id);
+        while (!open.isEmpty()) {
+            var top = open.peek();
+            var record = table.get(PathfindingLattice.key(top.x, top.y));
+            if (record.best == top && !record.closed) {
+                return top.f < bestCost;
+            }
+            open.poll(); //a cheaper route to it arrived later, or it has been expanded already.
+        }
+        return false;
+    }
+
+    /**
+     * Keep a node if it is the cheapest route yet to its position, queueing it again if it was closed.
+     *
+     * @param id        of the worker owning the node.
+     * @param open      queue of the worker.
+     * @param candidate node to keep.
+     */
+    private void relax(int id, PriorityQueue<Candidate> open, Candidate candidate) {
+        if (candidate.f >= bestCost) {
+            return;
+        }
+        long key = PathfindingLattice.key(candidate.x, candidate.y);
+        var record = tables.get(id).get(key);
+        if (record == null) {
+            record = new Record();
+            tables.get(id).put(key, record);
+        } else if (candidate.g >= record.best.g) {
+            return;
+        } else if (record.closed) {
+            record.closed = false; //reopen, as a cheaper route has been found.
+            reopenings[id]++;
+        }
+        record.best = candidate;
+        open.add(candidate);
+    }
+
+    /**
+     * Expand a node, sending each flyable neighbour to its owner, or record it if it ends a shorter route.
+     *
+     * @param id         of the worker owning the node.
+     * @param open       queue of the worker.
+     * @param node       node to expand.
+     * @param neighbours buffer to generate neighbours into.
+     */
+    private void expand(int id, PriorityQueue<Candidate> open, Candidate node, PathfindingNeighbours neighbours) {
+        long key = PathfindingLattice.key(node.x, node.y);
+        tables.get(id).get(key).closed = true;
+        //the start keeps its exact location, every other node is where the lattice put it.
+        double nLongitude = node.isStart ? start.getLongitude() : PathfindingLattice.toLongitude(node.x);
+        double nLatitude = node.isStart ? start.getLatitude() : PathfindingLattice.toLatitude(node.y);
+        if (LongLat.closeTo(nLongitude, nLatitude, target)) {
+            improve(node.g, key);
+            return;
+        }
+        expansions[id]++;
+
+        neighbours.fill(node.x, node.y, angleIncrement);
+        double totalWeight = node.g + LongLat.STRAIGHT_LINE_DISTANCE;
+        for (int i = 0; i < neighbours.size(); i++) {
+            double longitude = neighbours.getLongitude(i);
+            double latitude = neighbours.getLatitude(i);
+            if (!LongLat.isConfined(longitude, latitude)) {
+                continue;
+            }
+            double f = totalWeight + heuristic.applyAsDouble(longitude, latitude);
+            if (f >= bestCost) {
+                continue;
+            }
+            long neighbourKey = neighbours.getKey(i);
+            int owner = ownerOf(neighbourKey);
+            if (owner == id) {
+                var known = tables.get(id).get(neighbourKey);
+                if (known != null && totalWeight >= known.best.g) {
+                    continue; //no better than the route already known, so skip the intersection check.
+                }
+            }
+
+            //the start is off the lattice, so its moves are tested directly rather than cached.
+            boolean blocked = node.isStart
+                    ? myNoFlyZones.doesIntersectNoFly(nLongitude, nLatitude, longitude, latitude)
+                    : myVerdicts.isBlocked(node.x, node.y, neighbours.getAngleIndex(i),
+                    nLongitude, nLatitude, longitude, latitude);
+            if (blocked) {
+                continue;
+            }
+
+            var candidate = new Candidate(neighbours.getX(i), neighbours.getY(i), totalWeight, f, key,
+                    neighbours.getAngle(i), false);
+            if (owner == id) {
+                relax(id, open, candidate);
+            } else {
+                work.incrementAndGet();
+                messages[id]++;
+                inboxes.get(owner).add(candidate);
+            }
+        }
+    }
+
+    /**
+     * Record a route if it is shorter than the best found so far.
+     *
+     * @param cost of the route.
+     * @param key  lattice key of its final node.
+     */
+    private synchronized void improve(double cost, long key) {
+        if (cost < bestCost) {
+            bestCost = cost;
+            bestKey = key;
+        }
+    }
+
+    /**
+     * Worker owning a lattice position.
+     *
+     * @param key lattice key of the position.
+     * @return id of the worker.
+     */
+    private int ownerOf(long key) {
+        return (int) (((key * HASH_MULTIPLIER) >>> 33) % threads);
+    }
+
+    /**
+     * Follow the best known routes back from a final node to the start, once every worker has stopped.
+     *
+     * @param key lattice key of the final node.
+     * @return a collection of Pathfinding nodes.
+     */
+    private List<PathfindingNode> pathTo(long key) {
+        List<PathfindingNode> path = new ArrayList<>();
+        var node = tables.get(ownerOf(key)).get(key).best;
+        while (!node.isStart) {
+            var pathNode = start.at(node.x, node.y);
+            pathNode.setAngle(node.angle);
+            pathNode.setG(node.g);
+            pathNode.setF(node.f);
+            path.add(pathNode);
+            node = tables.get(ownerOf(node.parentKey)).get(node.parentKey).best;
+        }
+        start.setG(0);
+        path.add(start);
+        Collections.reverse(path);
+        for (int i = 1; i < path.size(); i++) {
+            path.get(i).setParent(path.get(i - 1));
+        }
+        return path;
+    }
+
+    /**
+     * Sum a count over every worker.
+     *
+     * @param counts for each worker.
+     * @return the total.
+     */
+    private static int total(int[] counts) {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int getExpansions() {
+        return total(expansions);
+    }
+
+    public int getReopenings() {
+        return total(reopenings);
+    }
+
+    public int getMessages() {
+        return total(messages);
+    }
+
+    /**
+     * Expansions of the busiest worker over the average, 1 when the work was spread evenly.
+     *
+     * @return the imbalance of the workers' expansions.
+     */
+    public double getImbalance() {
+        int most = 0;
+        for (int count : expansions) {
+            most = Math.max(most, count);
+        }
+        int total = getExpansions();
+        return total == 0 ? 1 : most * (double) threads / total;
+    }
+}
@@ -1,10 +1,6 @@
 package uk.ac.ed.inf;
 
-import org.jgrapht.Graphs;
-import org.jgrapht.graph.SimpleDirectedWeightedGraph;
-
 import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * Takes a day's orders and constructs the optimal path for the drone to take.
@@ -12,13 +8,13 @@ import java.util.Collections;
 public class PathBuilder implements PathBuilderInterface {
 
     /** Number of moves the drone is allowed to take */
-    private static final int MOVES_ALLOWED = 1500;
+    protected static final int MOVES_ALLOWED = 1500;
 
     /**Appleton tower longitude*/
-    private static final double AT_LONGITUDE = -3.186874;
+    protected static final double AT_LONGITUDE = -3.186874;
 
     /**Appleton tower latitude*/
-    private static final double AT_LATITUDE = 55.944494;
+    protected static final double AT_LATITUDE = 55.944494;
 
     /**OrderHandler of all orders to be completed*/
     private final OrderHandler todaysOrders;
@@ -38,8 +34,35 @@ public class PathBuilder implements PathBuilderInterface {
     /** The final flightpath taken by the drone as DroneMoves */
     private ArrayList<DroneMove> flightPath;
 
-    /** Graph of orders with edges to each other, for finding greedy permutation */
-    private SimpleDirectedWeightedGraph<String, tspEdge> originalGraph;
+    /** Time each route may be refined for in milliseconds, or 0 to use the first route found */
+    private long routeBudgetMillis = 0;
+
+    /** Checks of whether the drone could get home in time */
+    private int homeChecks = 0;
+
+    /** Home checks answered by the cost-to-go field alone, without searching */
+    private int homeChecksBounded = 0;
+
+    /** Orders at the front of the chosen permutation which are flown, all of them unless a plan left some out */
+    private int ordersToFly = Integer.MAX_VALUE;
+
+    /** Exact routes between every point of interest for the day */
+    private final RouteMatrix routeMatrix = new RouteMatrix();
+
+    /** Order numbers, in the order of their indexes in the tour matrix */
+    private final ArrayList<String> orderNos = new ArrayList<>();
+
+    /** Weights of going between orders, for finding greedy permutation */
+    private TourMatrix tourMatrix;
+
+    /** Exact moves to go to each order, including flying through its stops and hovering, for improving it */
+    private TourMatrix moveMatrix;
+
+    /** Exact moves to fly home from each order's destination */
+    private double[] homeMoves;
+
+    /** True to improve the greedy permutation with local search before flying it */
+    private boolean localSearch = true;
 
     /** Total value of deliveries made */
     private int profit;
@@ -65,103 +88,145 @@ public class PathBuilder implements PathBuilderInterface {
     }
 
     /**
-     * Builds an undirected weighted graph of Start and all Orders to be completed.
-     * The edges are weights calculated from the cost of the order to be completed and the total
+     * Builds a dense matrix of weights between Start and all Orders to be completed.
+     * The weights are calculated from the cost of the order to be completed and the total
      * distance from flying to the start point from current position until the end.
+     * Distances are exact, read from the route matrix.
      */
     @Override
     public void buildGraph() {
-        var initialGraph = new SimpleDirectedWeightedGraph<String, tspEdge>(tspEdge.class);
-
-        for (var orderNo : todaysOrders.getAllOrderNos()) {
-            initialGraph.addVertex(orderNo);
-        }
-
-        for (var x : initialGraph.vertexSet()) {
-            for (var y : initialGraph.vertexSet()) {
-                if (!x.equals(y)) {
-                    var ordX = todaysOrders.get(x);
-                    var ordY = todaysOrders.get(y);
-
-                    var totalDist = ordY.getEstimatedDistance() +
-                            ordX.getDestinationCoords().tspHeuristic(ordY.getStartCoords());
+        resetCounters();
+        computeRouteMatrix();
+
+        orderNos.clear();
+        orderNos.addAll(todaysOrders.getAllOrderNos());
+        var matrix = new TourMatrix(orderNos.size());
+        var moves = new TourMatrix(orderNos.size());
+        var home = new double[orderNos.size()];
+
+        for (int x = 0; x < orderNos.size(); x++) {
+            var ordX = todaysOrders.get(orderNos.get(x));
+            for (int y = 0; y < orderNos.size(); y++) {
+                if (x != y) {
+                    var ordY = todaysOrders.get(orderNos.get(y));
+
+                    var totalDist = routeDistance(ordX.getDestinationCoords(), ordY);
                     var cost = (double) ordY.getDeliveryCost();
 
-                    addEdge(initialGraph, x, y, totalDist, cost);
+                    matrix.setWeight(x, y, weightOf(totalDist, cost));
+                    moves.setWeight(x, y, routeMoves(ordX.getDestinationCoords(), ordY));
                 }
             }
+            home[x] = legMoves(ordX.getDestinationCoords(), end.getCoordinates());
         }
 
-        initialGraph.addVertex(start.getId()); //two separate loops because start is not an order.
-        for (var y : initialGraph.vertexSet()) {
-            if (!y.equals(start.getId())) {
-                var ordY = todaysOrders.get(y);
+        for (int y = 0; y < orderNos.size(); y++) { //start is not an order, so it has its own row.
+            var ordY = todaysOrders.get(orderNos.get(y));
 
-                var totalDist = ordY.getEstimatedDistance() +
-                        start.getCoordinates().tspHeuristic(ordY.getStartCoords());
-                var cost = (double) ordY.getDeliveryCost();
+            var totalDist = routeDistance(start.getCoordinates(), ordY);
+            var cost = (double) ordY.getDeliveryCost();
 
-                addEdge(initialGraph, start.getId(), y, totalDist, cost);
-            }
+            matrix.setStartWeight(y, weightOf(totalDist, cost));
+            moves.setStartWeight(y, routeMoves(start.getCoordinates(), ordY));
         }
-        this.originalGraph = initialGraph;
+        this.tourMatrix = matrix;
+        this.moveMatrix = moves;
+        this.homeMoves = home;
     }
 
     /**
-     * Add edge to graph.
-     *
-     * @param g    directed weighted graph
-     * @param x    from node
-     * @param y    to node
-     * @param mini term to minimise in weight calculation.
-     * @param maxi term to maximise in weight calculation.
+     * Find the exact route between every point of interest for the day, in parallel.
+     * These are Appleton Tower, every shop, and every distinct delivery point.
      */
-    private void addEdge(SimpleDirectedWeightedGraph<String, tspEdge> g, String x, String y, double mini, double maxi) {
-        var weight = mini / maxi;
+    private void computeRouteMatrix() {
+        routeMatrix.add(start.getCoordinates());
+        for (Shop shop : Menus.getInstance().getShops()) {
+            routeMatrix.add(new What3Words(shop.getLocation()).getCoordinates());
+        }
+        for (var orderNo : todaysOrders.getAllOrderNos()) {
+            routeMatrix.add(todaysOrders.get(orderNo).getDestinationCoords());
+        }
+        routeMatrix.compute();
+        System.out.println("ROUTE MATRIX: " + routeMatrix);
+    }
 
-        var edge = new tspEdge(weight);
-        g.addEdge(x, y, edge);
-        g.setEdgeWeight(edge, weight);
+    /**
+     * Distance flown from a location through every stop of an order.
+     *
+     * @param from  point of interest to start at.
+     * @param order to fly through.
+     * @return distance in degrees, from the route matrix.
+     */
+    private double routeDistance(LongLat from, Order order) {
+        var stops = order.getAllStops();
+        var dist = routeMatrix.getDistance(from, order.getStartCoords());
+        for (int i = 0; i < stops.size() - 1; i++) {
+            dist += routeMatrix.getDistance(stops.get(i).getCoordinates(), stops.get(i + 1).getCoordinates());
+        }
+        return dist;
+    }
 
+    /**
+     * Moves the drone makes flying from a location through every stop of an order, hovering at each.
+     *
+     * @param from  point of interest to start at.
+     * @param order to fly through.
+     * @return number of moves, from the route matrix.
+     */
+    private int routeMoves(LongLat from, Order order) {
+        var stops = order.getAllStops();
+        var moves = legMoves(from, order.getStartCoords()) + stops.size();
+        for (int i = 0; i < stops.size() - 1; i++) {
+            moves += legMoves(stops.get(i).getCoordinates(), stops.get(i + 1).getCoordinates());
+        }
+        return moves;
     }
 
     /**
-     * Check if there are still orders to visit on graph.
+     * Moves the drone makes flying between two points of interest, counting a single hover if they are close.
+     * A pair with no route costs more than the whole budget, so it is never chosen.
      *
-     * @param g    directed weighted graph.
-     * @param vert order we are currently at.
-     * @return true if there are more edges, thus more orders to complete.
+     * @param from point of interest to start at.
+     * @param to   point of interest to end 'close-to'.
+     * @return number of moves, from the route matrix.
      */
-    private Boolean hasNextEdge(SimpleDirectedWeightedGraph<String, tspEdge> g, String vert) {
-        return g.outDegreeOf(vert) > 0;
+    private int legMoves(LongLat from, LongLat to) {
+        if (from.closeTo(to)) {
+            return 1;
+        }
+        int moves = routeMatrix.getMoves(from, to);
+        return moves == RouteMatrix.NO_ROUTE ? MOVES_ALLOWED + 1 : moves;
     }
 
     /**
-     * Figure out which order to complete next.
-     * This is done in a greedy fashion, by selecting a visitable order with the lowest weight.
+     * Weight of going to an order.
      *
-     * @param g    directed weighted graph with orders still to visit.
-     * @param from order we are currently at.
-     * @return edge that we will travel along
+     * @param mini term to minimise in weight calculation.
+     * @param maxi term to maximise in weight calculation.
+     * @return the weight, lower is better.
      */
-    private tspEdge greedyNextEdge(SimpleDirectedWeightedGraph<String, tspEdge> g, String from) {
-        return (Collections.min(g.outgoingEdgesOf(from)));
+    private static double weightOf(double mini, double maxi) {
+        return mini / maxi;
     }
 
     /**
      * Uses generated graph and the day's orders to fly drone.
      * Greedy approach is taken on the graph, attempting to complete as many orders as possible and
-     * return home within the allowed moves.
+     * return home within the allowed moves. When the permutation was chosen as a plan, only the plan's orders are
+     * attempted.
      */
     @Override
     public void doTour() {
         var movesUsed = 0;
-        ArrayList<String> greedyPerm = getGreedyPerm(start.getId(), originalGraph); //get permutation of orders.
+        ordersToFly = Integer.MAX_VALUE;
+        ArrayList<String> chosenPerm = choosePerm(); //get permutation of orders.
         ArrayList<String> visitedOrders = new ArrayList<>();
-        System.out.println("GREEDY PERMS: " + greedyPerm);
+        System.out.println("GREEDY PERM: " + getGreedyPerm());
+        System.out.println("CHOSEN PERM: " + chosenPerm);
 
         Drone drone = new Drone(start.getCoordinates());
-        for (String orderNo : greedyPerm) {
+        drone.setRouteBudgetNanos(routeBudgetMillis * 1_000_000);
+        for (String orderNo : chosenPerm.subList(0, Math.min(ordersToFly, chosenPerm.size()))) {
             var ord = todaysOrders.get(orderNo);
             flyThroughOrder(drone, ord);
             visitedOrders.add(orderNo);
@@ -172,14 +237,14 @@ public class PathBuilder implements PathBuilderInterface {
             }
         }
 
-        boolean canFlyHome = MOVES_ALLOWED >= (drone.movesTo(end.getCoordinates()) + movesUsed);
+        boolean canFlyHome = canFlyHome(drone, movesUsed);
 
         while (movesUsed > MOVES_ALLOWED || !canFlyHome) {
             drone.rollbackOrder(); //undo latest order
             visitedOrders.remove(visitedOrders.size() - 1);
             movesUsed = drone.getMovesUsed();
 
-            canFlyHome = MOVES_ALLOWED >= (drone.movesTo(end.getCoordinates()) + movesUsed);
+            canFlyHome = canFlyHome(drone, movesUsed);
         }
 
         drone.flyToStop(end);
@@ -189,10 +254,43 @@ public class PathBuilder implements PathBuilderInterface {
         this.ordersCompleted = visitedOrders;
         this.flightPath = drone.getFlightPath();
         this.profit = calcProfit(ordersCompleted);
-        greedyPerm.removeAll(ordersCompleted);
-        this.profitLost = calcProfitLost(greedyPerm);
+        chosenPerm.removeAll(ordersCompleted);
+        this.profitLost = calcProfitLost(chosenPerm);
         this.monetaryValue = calcMonetaryValue();
         System.out.println("MOVES TAKEN: " + this.flightPath.size());
+        System.out.println("DIRECT ROUTES: " + DirectRoute.getInstance());
+        System.out.println("HOME CHECKS: " + homeChecks + ", answered without searching: " + homeChecksBounded);
+        System.out.println("ROUTE CACHE: " + RouteCache.getInstance());
+        System.out.println("CLEARANCE: " + myNoFlyZones.getClearance());
+        System.out.println("VERDICT CACHE: " + MoveVerdictCache.getInstance());
+    }
+
+    /**
+     * Set the shared counters printed after the tour back to zero, so they cover only this day's graph and tour.
+     * The routes and verdicts cached on earlier days are kept.
+     */
+    private void resetCounters() {
+        DirectRoute.getInstance().resetCounters();
+        RouteCache.getInstance().resetCounters();
+        myNoFlyZones.getClearance().resetCounters();
+        MoveVerdictCache.getInstance().resetCounters();
+    }
+
+    /**
+     * Check if the drone can still get home within the moves allowed.
+     * If even the fewest moves home are too many, there is no need to search for the route.
+     *
+     * @param drone     that will be flown.
+     * @param movesUsed by the drone so far.
+     * @return true if the drone can fly home in time.
+     */
+    private boolean canFlyHome(Drone drone, int movesUsed) {
+        homeChecks++;
+        if (MOVES_ALLOWED < drone.minMovesTo(end.getCoordinates()) + movesUsed) {
+            homeChecksBounded++;
+            return false;
+        }
+        return MOVES_ALLOWED >= (drone.movesTo(end.getCoordinates()) + movesUsed);
     }
 
     /**
@@ -209,37 +307,112 @@ public class PathBuilder implements PathBuilderInterface {
     }
 
     /**
-     * Uses graph to get a permutation of orders by taking the least cost edge from a start position.
-     * @param start the node to start the permutation from.
-     * @param g graph to run Greedy on.
+     * Uses the tour matrix to get a permutation of orders by taking the least weight from the start position.
      * @return ArrayList of orders, arranged 'optimally'.
      */
-    private ArrayList<String> getGreedyPerm(String start, SimpleDirectedWeightedGraph<String,tspEdge> g) {
+    private ArrayList<String> getGreedyPerm() {
         ArrayList<String> ordering = new ArrayList<>();
+        for (int next : tourMatrix.greedyOrder()) {
+            ordering.add(orderNos.get(next));
+        }
+        return ordering;
+    }
+
+    /**
+     * Choose the permutation of every order the drone will attempt, in the order it will fly them.
+     * The greedy permutation, improved with local search unless that is turned off.
+     * @return ArrayList of every order.
+     */
+    protected ArrayList<String> choosePerm() {
+        var greedyPerm = getGreedyPerm();
+        return localSearch ? getImprovedPerm(greedyPerm) : greedyPerm;
+    }
+
+    /**
+     * Improve a permutation of orders with 2-opt and Or-opt local search on exact move counts.
+     * Only the orders which fit within the moves allowed are rearranged, so none of them is lost.
+     * @param perm permutation of orders to improve.
+     * @return ArrayList of orders, arranged to fly fewer moves.
+     */
+    private ArrayList<String> getImprovedPerm(ArrayList<String> perm) {
+        int[] order = indexesOf(perm);
+
+        var improver = new TourImprover(moveMatrix, homeMoves, MOVES_ALLOWED);
+        int before = improver.fittingPrefix(order);
+        double movesBefore = improver.tourMoves(order, before);
+        int[] improved = improver.improve(order);
+        int after = improver.fittingPrefix(improved);
+        System.out.printf("LOCAL SEARCH: %s, orders fitting: %d -> %d, planned moves: %.0f -> %.0f%n", improver,
+                before, after, movesBefore, improver.tourMoves(improved, after));
+
+        return orderNosOf(improved);
+    }
 
-        var localGraph = shallowCopyOf(g);
+    /**
+     * Convert order numbers into their indexes in the tour matrices.
+     * @param perm order numbers.
+     * @return index of each order.
+     */
+    protected int[] indexesOf(ArrayList<String> perm) {
+        int[] order = new int[perm.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = orderNos.indexOf(perm.get(i));
+        }
+        return order;
+    }
 
-        while (hasNextEdge(localGraph, start)) {
-            var nextEdge = greedyNextEdge(localGraph, start); //get next edge
-            var next = localGraph.getEdgeTarget(nextEdge); //get next order
-            localGraph.removeVertex(start); //pop order as it's been visited
-            start = next;
-            ordering.add(next);
+    /**
+     * Convert indexes in the tour matrices back into order numbers.
+     * @param order index of each order.
+     * @return ArrayList of order numbers.
+     */
+    protected ArrayList<String> orderNosOf(int[] order) {
+        ArrayList<String> ordering = new ArrayList<>();
+        for (int next : order) {
+            ordering.add(orderNos.get(next));
         }
         return ordering;
     }
 
+    /**
+     * Put the orders chosen for delivery first, followed by every order left out. Only the chosen orders are flown,
+     * so the tour delivers the plan and the orders left out are counted as lost.
+     * @param chosen index of each order chosen, in the order they will be flown.
+     * @return ArrayList of every order number.
+     */
+    protected ArrayList<String> chosenFirst(int[] chosen) {
+        ordersToFly = chosen.length;
+        ArrayList<String> ordering = orderNosOf(chosen);
+        for (String orderNo : orderNos) {
+            if (!ordering.contains(orderNo)) {
+                ordering.add(orderNo);
+            }
+        }
+        return ordering;
+    }
 
     /**
-     * Create a shallow copy of a graph by adding all of its vertices and edges to a new graph.
-     * This is so vertices can be 'popped' and the graph reset after without a full rebuild.
-     * @param g graph to copy from.
-     * @return a shallow copy of the given graph.
+     * Value of each order in pence, by its index in the tour matrices.
+     * @return value of each order.
      */
-    private SimpleDirectedWeightedGraph<String, tspEdge> shallowCopyOf(SimpleDirectedWeightedGraph<String, tspEdge> g) {
-        var newG = new SimpleDirectedWeightedGraph<String, tspEdge>(tspEdge.class);
-        Graphs.addGraph(newG, g);
-        return newG;
+    protected int[] orderValues() {
+        int[] values = new int[orderNos.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = todaysOrders.get(orderNos.get(i)).getDeliveryCost();
+        }
+        return values;
+    }
+
+    protected TourMatrix getTourMatrix() {
+        return tourMatrix;
+    }
+
+    protected TourMatrix getMoveMatrix() {
+        return moveMatrix;
+    }
+
+    protected double[] getHomeMoves() {
+        return homeMoves;
     }
 
     /**
@@ -316,5 +489,23 @@ public class PathBuilder implements PathBuilderInterface {
         return monetaryValue;
     }
 
+    /**
+     * Choose whether the greedy permutation is improved with local search before it is flown.
+     *
+     * @param localSearch true to improve it, the default.
+     */
+    public void setLocalSearch(boolean localSearch) {
+        this.localSearch = localSearch;
+    }
+
+    /**
+     * Let every route flown in the tour be refined with finer angles for a while after it is first found.
+     *
+     * @param routeBudgetMillis time for each route in milliseconds, 0 to fly the first route found.
+     */
+    public void setRouteBudgetMillis(long routeBudgetMillis) {
+        this.routeBudgetMillis = routeBudgetMillis;
+    }
+
 }
 
@@ -1,5 +1,6 @@
 package uk.ac.ed.inf;
 
+
 import java.util.*;
 
 /**
@@ -10,73 +11,359 @@ public class Pathfinding implements PathfindingInterface {
     /** Scale of the increments pathfinding makes. Set lower for precision, but worse performance */
     private static final int PATHFINDING_ANGLE_INCREMENT = 30;
 
+    /** Finer increments tried in turn by the anytime planner, while its budget lasts */
+    private static final int[] REFINED_ANGLE_INCREMENTS = {20, 10};
+
+    /** Expansions between checks of the deadline, as reading the clock is not free */
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    /** Largest turn either side of the target's bearing a cone-pruned expansion considers, in degrees */
+    private static final int CONE_HALF_WIDTH = 30;
+
+    /** Distance from every edge, and from the confinement boundary, a node needs for its neighbours to be pruned */
+    private static final double CONE_CLEARANCE = 2 * LongLat.STRAIGHT_LINE_DISTANCE;
+
+    /** Slot returned when a search runs out of time */
+    private static final int TIMED_OUT = -2;
+
     /** Instance of No-Fly zones to check intersection */
     private static final NoFlyZones myNoFlyZones = NoFlyZones.getInstance();
 
+    /** Verdicts of moves already checked against the No-Fly zones, shared by every search */
+    private static final MoveVerdictCache myVerdicts = MoveVerdictCache.getInstance();
+
+    /** Number of nodes expanded by the last search */
+    private int nodesExpanded = 0;
+
+    /** Number of closed nodes reopened by the last search, as the heuristic is not consistent */
+    private int nodesReopened = 0;
+
+    /** Number of nodes expanded by the backward half of the last search, if it was bidirectional */
+    private int nodesExpandedBackward = 0;
+
+    /** Scale of the increments the current search makes */
+    private int angleIncrement = PATHFINDING_ANGLE_INCREMENT;
+
+    /** Time by which the current search must give up, from System.nanoTime, or Long.MAX_VALUE for none */
+    private long deadline = Long.MAX_VALUE;
+
+    /** Finest angle increment whose search completed in the last anytime planning */
+    private int finestIncrementCompleted = PATHFINDING_ANGLE_INCREMENT;
+
+    /** Allowed fraction above the shortest route, or NaN to search with the flight heuristic instead */
+    private double epsilon = Double.NaN;
+
+    /** True to raise the heuristic behind buildings with the visibility graph */
+    private boolean obstacleAware = false;
+
+    /** Heuristic around the buildings for the current search, or null if not obstacle aware */
+    private ObstacleHeuristic obstacles = null;
+
+    /** True to raise the heuristic with distances to landmarks */
+    private boolean landmarkAware = false;
+
+    /** Landmark heuristic for the current search, or null if not landmark aware */
+    private LandmarkHeuristic landmarks = null;
+
+    /** True to search every legal angle, but only those heading towards the target, where the target is in sight */
+    private boolean conePruning = false;
+
+    /** Number of expansions in the last search which were pruned to the cone */
+    private int nodesPruned = 0;
+
+    /** Squares the fine search is kept to, or null to search everywhere */
+    private boolean[] corridor = null;
+
+    /** Grid the corridor was planned on */
+    private CorridorGrid corridorGrid = null;
+
+    /** Number of squares expanded planning the last corridor */
+    private int coarseExpansions = 0;
+
+    /** True if the last corridor search had to fall back to searching everywhere */
+    private boolean corridorFallback = false;
+
+    /** Proven ratio of the last bounded route's length to the shortest, NaN if the last search was not bounded */
+    private double boundAchieved = Double.NaN;
+
     /**
-     * Uses the A* algorithm to compute a route from a start node to a destination node.
+     * Uses the A* algorithm to compute a route from a start location to a destination.
      * Finishes if final location is 'close-to' the destination.
      * The amount of available moves per iteration can be controlled via the angle increment constant.
+     * Nodes are kept in this thread's reusable workspace, so a search allocates almost nothing.
      * Algorithm based on: https://www.baeldung.com/java-a-star-pathfinding
      *
-     * @param start  location to begin at
-     * @param target location to end 'close-to'
-     * @return the final node, from which the route can be derived.
+     * @param workspace emptied workspace of this thread.
+     * @param start     location to begin at.
+     * @param target    location to end 'close-to'.
+     * @return slot of the final node, from which the route can be derived, -1 if there is no route,
+     * or TIMED_OUT if the deadline passed first.
      */
-    private PathfindingNode doAStar(PathfindingNode start, PathfindingNode target) {
-        PriorityQueue<PathfindingNode> openList = new PriorityQueue<>();
-        PriorityQueue<PathfindingNode> closedList = new PriorityQueue<>();
-        HashMap<LongLat, PathfindingNode> all = new HashMap<>();
+    private int doAStar(PathfindingWorkspace workspace, PathfindingNode start, LongLat target) {
+        PathfindingNeighbours neighbours = workspace.getNeighbours(); //refilled for every expansion.
+        nodesExpanded = 0;
+        nodesReopened = 0;
+        nodesPruned = 0;
 
-        start.setG(0);
-        start.setF((start.getG() + start.flightHeuristic(target)));
-        openList.add(start);
-        all.put(start.asLongLat(), start);
+        workspace.ensureCapacity(1);
+        int first = workspace.slotOf(start.getX(), start.getY());
+        workspace.setRoute(first, PathfindingWorkspace.NO_SLOT, LongLat.JUNK_ANGLE, 0,
+                heuristic(start.getLongitude(), start.getLatitude(), target));
+        workspace.pushOrDecrease(first);
 
-        while (!openList.isEmpty()) {
-            PathfindingNode n = openList.peek();
-            if (n.closeTo(target)) {
+        while (workspace.hasOpen()) {
+            if (deadline != Long.MAX_VALUE && nodesExpanded % DEADLINE_CHECK_INTERVAL == 0
+                    && System.nanoTime() >= deadline) {
+                return TIMED_OUT;
+            }
+            workspace.ensureCapacity(PathfindingLattice.ANGLE_COUNT); //grow now, as slots are held while expanding.
+            int n = workspace.popOpen();
+            //the start keeps its exact location, every other node is where the lattice put it.
+            boolean isStart = workspace.getParent(n) == PathfindingWorkspace.NO_SLOT;
+            double nLongitude = isStart ? start.getLongitude() : workspace.getLongitude(n);
+            double nLatitude = isStart ? start.getLatitude() : workspace.getLatitude(n);
+            if (LongLat.closeTo(nLongitude, nLatitude, target)) {
+                if (!Double.isNaN(epsilon)) {
+                    boundAchieved = boundOf(workspace, start, n, target);
+                }
                 return n;
             }
+            workspace.setClosed(n, true);
+            nodesExpanded++;
 
-            for (PathfindingNode m : n.generateNeighbours(PATHFINDING_ANGLE_INCREMENT)) {
-                var a = m.toPoint();
-                var b = n.toPoint();
+            if (conePruning && canPrune(nLongitude, nLatitude, target)) {
+                neighbours.fillCone(workspace.getX(n), workspace.getY(n),
+                        LongLat.bearingTo(nLongitude, nLatitude, target), CONE_HALF_WIDTH);
+                nodesPruned++;
+            } else {
+                neighbours.fill(workspace.getX(n), workspace.getY(n), angleIncrement);
+            }
+            double totalWeight = (workspace.getG(n) + LongLat.STRAIGHT_LINE_DISTANCE);
 
-                if (!myNoFlyZones.doesIntersectNoFly(a, b) && m.isConfined()) {
-                    double totalWeight = (n.getG() + LongLat.STRAIGHT_LINE_DISTANCE);
+            for (int i = 0; i < neighbours.size(); i++) {
+                double longitude = neighbours.getLongitude(i);
+                double latitude = neighbours.getLatitude(i);
+                if (!LongLat.isConfined(longitude, latitude)) {
+                    continue;
+                }
+                if (corridor != null && !corridorGrid.isInside(corridor, longitude, latitude)) {
+                    continue;
+                }
 
-                    if (all.containsKey(m.asLongLat())) { //as DS is not a graph, need to check if node is new or not.
-                        m = all.get(m.asLongLat());
-                    } else {
-                        all.put(m.asLongLat(), m);
-                    }
+                int m = workspace.find(neighbours.getX(i), neighbours.getY(i));
+                if (m >= 0 && totalWeight >= workspace.getG(m)) {
+                    continue; //no better than the route already known, so skip the intersection check.
+                }
+
+                //the start is off the lattice, so its moves are tested directly rather than cached.
+                boolean blocked = isStart
+                        ? myNoFlyZones.doesIntersectNoFly(nLongitude, nLatitude, longitude, latitude)
+                        : myVerdicts.isBlocked(workspace.getX(n), workspace.getY(n), neighbours.getAngleIndex(i),
+                        nLongitude, nLatitude, longitude, latitude);
+                if (blocked) {
+                    continue;
+                }
+
+                if (m < 0) {
+                    m = workspace.slotOf(neighbours.getX(i), neighbours.getY(i));
+                } else if (workspace.isClosed(m)) {
+                    workspace.setClosed(m, false); //reopen, as a cheaper route has been found.
+                    nodesReopened++;
+                }
+
+                workspace.setRoute(m, n, neighbours.getAngle(i), totalWeight,
+                        totalWeight + heuristic(longitude, latitude, target));
+                workspace.pushOrDecrease(m);
+            }
+        }
+        if (corridor == null) { //a corridor which is too narrow is not an error, as the caller falls back.
+            System.err.println("PATH COULD NOT BE FOUND");
+        }
+        return -1;
+    }
 
-                    if (!openList.contains(m) && !closedList.contains(m)) {
-                        m.setParent(n);
-                        m.setG(totalWeight);
-                        m.setF((m.getG() + m.flightHeuristic(target)));
-                        openList.add(m);
-
-                    } else {
-                        if (totalWeight < m.getG()) {
-                            m.setParent(n);
-                            m.setG(totalWeight);
-                            m.setF((m.getG() + m.flightHeuristic(target)));
-
-                            if (closedList.contains(m)) {
-                                closedList.remove(m);
-                                openList.add(m);
-                            }
-                        }
+    /**
+     * Check if a position's neighbours may be pruned to a cone around the target's bearing: it must be far enough
+     * from every building and the edge of the confinement area that the route only needs to turn a little, and
+     * the target must be in sight. Elsewhere the search keeps its usual branching, so routes which have to go
+     * around buildings stay on the usual angles, where nodes reached in different ways land on the same positions.
+     *
+     * @param longitude of the position.
+     * @param latitude  of the position.
+     * @param target    location to end 'close-to'.
+     * @return true if the neighbours may be pruned.
+     */
+    private static boolean canPrune(double longitude, double latitude, LongLat target) {
+        return myNoFlyZones.getClearance().clearanceAt(longitude, latitude) > CONE_CLEARANCE
+                && longitude - LongLat.CONFINEMENT_LONGITUDE_WEST > CONE_CLEARANCE
+                && LongLat.CONFINEMENT_LONGITUDE_EAST - longitude > CONE_CLEARANCE
+                && latitude - LongLat.CONFINEMENT_LATITUDE_SOUTH > CONE_CLEARANCE
+                && LongLat.CONFINEMENT_LATITUDE_NORTH - latitude > CONE_CLEARANCE
+                && !myNoFlyZones.doesIntersectNoFly(longitude, latitude, target.getLongitude(), target.getLatitude());
+    }
+
+    /**
+     * Heuristic for the search: the flight heuristic normally, or the admissible heuristic inflated by
+     * (1 + epsilon) when the route must be within a bound of the shortest.
+     * If obstacle or landmark aware, raised to at least their admissible estimates, inflated in the same way.
+     *
+     * @param longitude of the 'from' position.
+     * @param latitude  of the 'from' position.
+     * @param target    location to end 'close-to'.
+     * @return the heuristic calculated.
+     */
+    private double heuristic(double longitude, double latitude, LongLat target) {
+        if (Double.isNaN(epsilon)) {
+            double h = LongLat.flightHeuristic(longitude, latitude, target);
+            return obstacles == null && landmarks == null ? h : Math.max(h, lowerBound(longitude, latitude, target));
+        }
+        return (1 + epsilon) * lowerBound(longitude, latitude, target);
+    }
+
+    /**
+     * Admissible estimate of the distance still to fly, the best of whichever estimates are turned on.
+     *
+     * @param longitude of the 'from' position.
+     * @param latitude  of the 'from' position.
+     * @param target    location to end 'close-to'.
+     * @return the estimate in degrees, never more than the real distance.
+     */
+    private double lowerBound(double longitude, double latitude, LongLat target) {
+        double h = LongLat.admissibleHeuristic(longitude, latitude, target);
+        if (obstacles != null) {
+            h = Math.max(h, obstacles.estimate(longitude, latitude));
+        }
+        if (landmarks != null) {
+            h = Math.max(h, landmarks.estimate(longitude, latitude));
+        }
+        return h;
+    }
+
+    /**
+     * Work out how far from the shortest a route found by weighted A* is proven to be.
+     * Every route not yet found passes through an open node, so the lowest g plus admissible heuristic
+     * among them is a lower bound on the shortest route.
+     *
+     * @param workspace holding the search.
+     * @param start     location the search began at.
+     * @param goal      slot of the final node.
+     * @param target    location to end 'close-to'.
+     * @return ratio of the route's length to the lower bound, at most 1 + epsilon.
+     */
+    private double boundOf(PathfindingWorkspace workspace, PathfindingNode start, int goal, LongLat target) {
+        double cost = workspace.getG(goal);
+        double lower = cost;
+        for (int i = 0; i < workspace.getOpenCount(); i++) {
+            int slot = workspace.getOpen(i);
+            boolean isStart = workspace.getParent(slot) == PathfindingWorkspace.NO_SLOT;
+            double longitude = isStart ? start.getLongitude() : workspace.getLongitude(slot);
+            double latitude = isStart ? start.getLatitude() : workspace.getLatitude(slot);
+            lower = Math.min(lower, workspace.getG(slot) + lowerBound(longitude, latitude, target));
+        }
+        return lower <= 0 ? 1 : cost / lower;
+    }
+
+    /**
+     * Computes a route from one LongLat to another which is at most (1 + epsilon) times as long as the shortest.
+     * Uses weighted A* with an admissible heuristic, and records the bound actually proven.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @param epsilon how far above the shortest the route may be, as a fraction. 0 finds the shortest.
+     * @return a collection of Pathfinding nodes.
+     * @throws IllegalArgumentException if epsilon is negative.
+     */
+    @Override
+    public List<PathfindingNode> weightedRouteTo(LongLat startLL, LongLat endLL, double epsilon) {
+        if (!(epsilon >= 0)) {
+            throw new IllegalArgumentException("Epsilon must not be negative.");
+        }
+        this.epsilon = epsilon;
+        try {
+            return search(startLL, endLL, false);
+        } finally {
+            this.epsilon = Double.NaN;
+        }
+    }
+
+    /**
+     * Anytime planning: find a route quickly with the usual angle increment, then search again with finer
+     * increments while the budget lasts, keeping whichever route has the fewest moves.
+     * The first search always completes, later ones are abandoned if the budget runs out.
+     *
+     * @param startLL     location to start at
+     * @param endLL       location to end 'close-to'
+     * @param budgetNanos time allowed for refining, in nanoseconds.
+     * @return a collection of Pathfinding nodes.
+     */
+    @Override
+    public List<PathfindingNode> anytimeRouteTo(LongLat startLL, LongLat endLL, long budgetNanos) {
+        long until = System.nanoTime() + budgetNanos;
+        var best = routeTo(startLL, endLL);
+        int expanded = nodesExpanded;
+        finestIncrementCompleted = PATHFINDING_ANGLE_INCREMENT;
+
+        for (int increment : REFINED_ANGLE_INCREMENTS) {
+            if (System.nanoTime() >= until) {
+                break;
+            }
+            this.angleIncrement = increment;
+            this.deadline = until;
+            try {
+                var path = routeTo(startLL, endLL);
+                expanded += nodesExpanded;
+                if (path.get(path.size() - 1).closeTo(endLL)) {
+                    finestIncrementCompleted = increment;
+                    if (path.size() < best.size() || !best.get(best.size() - 1).closeTo(endLL)) {
+                        best = path;
                     }
                 }
+            } finally {
+                this.angleIncrement = PATHFINDING_ANGLE_INCREMENT;
+                this.deadline = Long.MAX_VALUE;
             }
-            openList.remove(n);
-            closedList.add(n);
         }
-        System.err.println("PATH COULD NOT BE FOUND");
-        return null;
+        nodesExpanded = expanded;
+        return best;
+    }
+
+    /**
+     * Two level planning for long routes: plan a corridor over a coarse grid of the no-fly zones first, then run
+     * the usual search only inside it. If the corridor is too narrow for the fine search, searches everywhere.
+     * The fine expansions of both searches are counted, and the coarse expansions are counted separately.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @return a collection of Pathfinding nodes.
+     */
+    public List<PathfindingNode> corridorRouteTo(LongLat startLL, LongLat endLL) {
+        var grid = myNoFlyZones.getCorridors();
+        int[] counter = new int[1];
+        var planned = grid.corridor(startLL, endLL, counter);
+        coarseExpansions = counter[0];
+        corridorFallback = false;
+
+        int restrictedExpanded = 0;
+        if (planned != null) {
+            this.corridorGrid = grid;
+            this.corridor = planned;
+            List<PathfindingNode> path;
+            try {
+                path = routeTo(startLL, endLL);
+            } finally {
+                this.corridor = null;
+                this.corridorGrid = null;
+            }
+            if (path.get(path.size() - 1).closeTo(endLL)) {
+                return path;
+            }
+            restrictedExpanded = nodesExpanded;
+        }
+
+        corridorFallback = true;
+        var path = routeTo(startLL, endLL);
+        nodesExpanded += restrictedExpanded;
+        return path;
     }
 
     /**
@@ -90,23 +377,330 @@ public class Pathfinding implements PathfindingInterface {
      * @return a collection of Pathfinding nodes.
      */
     public List<PathfindingNode> routeTo(LongLat startLL, LongLat endLL) {
+        return search(startLL, endLL, false);
+    }
+
+    /**
+     * Computes the best route from one LongLat to another, searching from both ends at once.
+     * A bidirectional search expands fewer nodes on long routes around the buildings.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @return a collection of Pathfinding nodes.
+     */
+    public List<PathfindingNode> bidirectionalRouteTo(LongLat startLL, LongLat endLL) {
+        return search(startLL, endLL, true);
+    }
+
+    /**
+     * Computes the best route from one LongLat to another, optionally searching from both ends at once.
+     *
+     * @param startLL       location to start at
+     * @param endLL         location to end 'close-to'
+     * @param bidirectional true to also search backward from the end.
+     * @return a collection of Pathfinding nodes.
+     */
+    private List<PathfindingNode> search(LongLat startLL, LongLat endLL, boolean bidirectional) {
+        if (startLL.closeTo(endLL)) {
+            System.err.println("WARNING: START AND END ARE CLOSE");
+        }
+
+        boundAchieved = Double.NaN;
+        if (bidirectional) {
+            var search = new BidirectionalSearch(angleIncrement);
+            var path = search.routeTo(startLL, endLL);
+            nodesExpanded = search.getForwardExpansions() + search.getBackwardExpansions();
+            nodesExpandedBackward = search.getBackwardExpansions();
+            nodesReopened = 0;
+            return path;
+        }
+        nodesExpandedBackward = 0;
+
+        PathfindingNode start = new PathfindingNode(startLL.getLongitude(), startLL.getLatitude());
+        PathfindingWorkspace workspace = PathfindingWorkspace.get();
+        if (obstacleAware) { //searches towards Appleton Tower or a shop share one field.
+            var field = CostToGoFields.getInstance().fieldTo(endLL);
+            obstacles = field != null ? field : new ObstacleHeuristic(myNoFlyZones, endLL);
+        }
+        landmarks = landmarkAware ? new LandmarkHeuristic(myNoFlyZones, LandmarkTables.getInstance(), startLL, endLL) : null;
+        int n;
+        try {
+            n = doAStar(workspace, start, endLL);
+        } finally {
+            obstacles = null;
+            landmarks = null;
+        }
+        return pathOf(workspace, start, n);
+    }
+
+    /**
+     * Computes a shortest route from one LongLat to another using several threads, with hash-distributed A*.
+     * The route has as few moves as a serial search for the shortest, which is what the obstacle and landmark
+     * estimates are there to speed up, so they are used here too if turned on.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @param threads number of threads to search with, 1 or more.
+     * @return a collection of Pathfinding nodes.
+     * @throws IllegalArgumentException if threads is less than 1.
+     */
+    public List<PathfindingNode> parallelRouteTo(LongLat startLL, LongLat endLL, int threads) {
         if (startLL.closeTo(endLL)) {
             System.err.println("WARNING: START AND END ARE CLOSE");
         }
 
+        var search = new ParallelSearch(angleIncrement, threads, (lng, lat) -> lowerBound(lng, lat, endLL));
+        if (obstacleAware) {
+            var field = CostToGoFields.getInstance().fieldTo(endLL);
+            obstacles = field != null ? field : new ObstacleHeuristic(myNoFlyZones, endLL);
+        }
+        landmarks = landmarkAware ? new LandmarkHeuristic(myNoFlyZones, LandmarkTables.getInstance(), startLL, endLL) : null;
+        try {
+            var path = search.routeTo(startLL, endLL);
+            boundAchieved = 1;
+            return path;
+        } finally {
+            obstacles = null;
+            landmarks = null;
+            nodesExpanded = search.getExpansions();
+            nodesReopened = search.getReopenings();
+            nodesExpandedBackward = 0;
+        }
+    }
+
+    /**
+     * One-to-many search: grows a single A* frontier from the start until it has come 'close-to' every target,
+     * instead of searching from the start once per target. The heuristic is the admissible one towards the nearest
+     * target not yet reached, inflated by (1 + epsilon), so each route is at most (1 + epsilon) times as long as
+     * the shortest at the usual angle increment.
+     *
+     * @param startLL location to start at
+     * @param targets locations to end 'close-to', one route for each.
+     * @param epsilon how far above the shortest each route may be, as a fraction. 0 finds the shortest.
+     * @return a collection of Pathfinding nodes for each target, in the same order. A route which could not be
+     * found holds only the start.
+     * @throws IllegalArgumentException if epsilon is negative.
+     */
+    public List<List<PathfindingNode>> routesTo(LongLat startLL, List<LongLat> targets, double epsilon) {
+        if (!(epsilon >= 0)) {
+            throw new IllegalArgumentException("Epsilon must not be negative.");
+        }
+        boundAchieved = Double.NaN;
+        nodesExpandedBackward = 0;
         PathfindingNode start = new PathfindingNode(startLL.getLongitude(), startLL.getLatitude());
-        PathfindingNode end = new PathfindingNode(endLL.getLongitude(), endLL.getLatitude());
+        PathfindingWorkspace workspace = PathfindingWorkspace.get();
+
+        //slots move as the workspace grows, so each goal is remembered by its lattice position.
+        long[] goalX = new long[targets.size()];
+        long[] goalY = new long[targets.size()];
+        boolean[] reached = new boolean[targets.size()];
+        doOneToMany(workspace, start, targets, 1 + epsilon, goalX, goalY, reached);
+
+        List<List<PathfindingNode>> routes = new ArrayList<>(targets.size());
+        for (int i = 0; i < targets.size(); i++) {
+            int n = reached[i] ? workspace.find(goalX[i], goalY[i]) : -1;
+            routes.add(pathOf(workspace, new PathfindingNode(startLL.getLongitude(), startLL.getLatitude()), n));
+        }
+        return routes;
+    }
+
+    /**
+     * Uses A* to reach every target from a start, stopping once all have been reached.
+     * A node is checked against every target not yet reached when it is expanded. The heuristic only ever rises
+     * as targets are reached, so keys already in the open list stay below weight times the real cost, and a goal's
+     * key is its exact cost, as the heuristic there is 0. So no target is recorded with a route longer than weight
+     * times its shortest.
+     *
+     * @param workspace emptied workspace of this thread.
+     * @param start     location to begin at.
+     * @param targets   locations to end 'close-to'.
+     * @param weight    the heuristic is inflated by, at least 1.
+     * @param goalX     receives the lattice x coordinate of the final node for each target.
+     * @param goalY     receives the lattice y coordinate of the final node for each target.
+     * @param reached   receives true for each target a route was found to.
+     */
+    private void doOneToMany(PathfindingWorkspace workspace, PathfindingNode start, List<LongLat> targets,
+                             double weight, long[] goalX, long[] goalY, boolean[] reached) {
+        PathfindingNeighbours neighbours = workspace.getNeighbours();
+        nodesExpanded = 0;
+        nodesReopened = 0;
+        int remaining = targets.size();
+
+        workspace.ensureCapacity(1);
+        int first = workspace.slotOf(start.getX(), start.getY());
+        workspace.setRoute(first, PathfindingWorkspace.NO_SLOT, LongLat.JUNK_ANGLE, 0,
+                weight * nearestHeuristic(start.getLongitude(), start.getLatitude(), targets, reached));
+        workspace.pushOrDecrease(first);
+
+        while (workspace.hasOpen() && remaining > 0) {
+            workspace.ensureCapacity(PathfindingLattice.ANGLE_COUNT);
+            int n = workspace.popOpen();
+            boolean isStart = workspace.getParent(n) == PathfindingWorkspace.NO_SLOT;
+            double nLongitude = isStart ? start.getLongitude() : workspace.getLongitude(n);
+            double nLatitude = isStart ? start.getLatitude() : workspace.getLatitude(n);
+            for (int t = 0; t < targets.size(); t++) {
+                if (!reached[t] && LongLat.closeTo(nLongitude, nLatitude, targets.get(t))) {
+                    reached[t] = true;
+                    goalX[t] = workspace.getX(n);
+                    goalY[t] = workspace.getY(n);
+                    remaining--;
+                }
+            }
+            if (remaining == 0) {
+                return;
+            }
+            workspace.setClosed(n, true);
+            nodesExpanded++;
 
-        PathfindingNode n = doAStar(start, end);
+            neighbours.fill(workspace.getX(n), workspace.getY(n), angleIncrement);
+            double totalWeight = (workspace.getG(n) + LongLat.STRAIGHT_LINE_DISTANCE);
+
+            for (int i = 0; i < neighbours.size(); i++) {
+                double longitude = neighbours.getLongitude(i);
+                double latitude = neighbours.getLatitude(i);
+                if (!LongLat.isConfined(longitude, latitude)) {
+                    continue;
+                }
+
+                int m = workspace.find(neighbours.getX(i), neighbours.getY(i));
+                if (m >= 0 && totalWeight >= workspace.getG(m)) {
+                    continue;
+                }
+
+                boolean blocked = isStart
+                        ? myNoFlyZones.doesIntersectNoFly(nLongitude, nLatitude, longitude, latitude)
+                        : myVerdicts.isBlocked(workspace.getX(n), workspace.getY(n), neighbours.getAngleIndex(i),
+                        nLongitude, nLatitude, longitude, latitude);
+                if (blocked) {
+                    continue;
+                }
 
+                if (m < 0) {
+                    m = workspace.slotOf(neighbours.getX(i), neighbours.getY(i));
+                } else if (workspace.isClosed(m)) {
+                    workspace.setClosed(m, false);
+                    nodesReopened++;
+                }
+
+                workspace.setRoute(m, n, neighbours.getAngle(i), totalWeight,
+                        totalWeight + weight * nearestHeuristic(longitude, latitude, targets, reached));
+                workspace.pushOrDecrease(m);
+            }
+        }
+        if (remaining > 0) {
+            System.err.println("PATH COULD NOT BE FOUND TO " + remaining + " TARGETS");
+        }
+    }
+
+    /**
+     * Admissible heuristic towards whichever target not yet reached is nearest.
+     *
+     * @param longitude of the 'from' position.
+     * @param latitude  of the 'from' position.
+     * @param targets   locations to end 'close-to'.
+     * @param reached   true for each target already reached.
+     * @return the heuristic calculated.
+     */
+    private static double nearestHeuristic(double longitude, double latitude, List<LongLat> targets,
+                                           boolean[] reached) {
+        double h = Double.POSITIVE_INFINITY;
+        for (int t = 0; t < targets.size(); t++) {
+            if (!reached[t]) {
+                h = Math.min(h, LongLat.admissibleHeuristic(longitude, latitude, targets.get(t)));
+            }
+        }
+        return h == Double.POSITIVE_INFINITY ? 0 : h;
+    }
+
+    /**
+     * Turn the parent chain of a search into a route. Only the nodes on the route become objects.
+     *
+     * @param workspace holding the search.
+     * @param start     location the search began at, which begins the route.
+     * @param n         slot of the final node, or -1 if there is no route.
+     * @return a collection of Pathfinding nodes.
+     */
+    private static List<PathfindingNode> pathOf(PathfindingWorkspace workspace, PathfindingNode start, int n) {
         List<PathfindingNode> path = new ArrayList<>();
-        while (n.getParent() != null) {
-            path.add(n);
-            n = n.getParent();
+        while (n >= 0 && workspace.getParent(n) != PathfindingWorkspace.NO_SLOT) {
+            var node = start.at(workspace.getX(n), workspace.getY(n));
+            node.setAngle(workspace.getAngle(n));
+            node.setG(workspace.getG(n));
+            node.setF(workspace.getF(n));
+            path.add(node);
+            n = workspace.getParent(n);
         }
-        path.add(n);
+        start.setG(0);
+        path.add(start);
         Collections.reverse(path);
+        for (int i = 1; i < path.size(); i++) {
+            path.get(i).setParent(path.get(i - 1));
+        }
 
         return path;
     }
+
+    /**
+     * Choose whether searches raise the heuristic behind buildings, using the visibility graph of the no-fly zones.
+     * Bidirectional searches are not affected.
+     *
+     * @param obstacleAware true to use the distance around the buildings.
+     */
+    public void setObstacleAware(boolean obstacleAware) {
+        this.obstacleAware = obstacleAware;
+    }
+
+    /**
+     * Choose whether searches raise the heuristic using landmarks (ALT).
+     * The landmark tables are built on first use and kept for every later search, on any day.
+     * Bidirectional searches are not affected.
+     *
+     * @param landmarkAware true to use the landmark tables.
+     */
+    public void setLandmarkAware(boolean landmarkAware) {
+        this.landmarkAware = landmarkAware;
+    }
+
+    /**
+     * Choose whether searches use every legal angle, pruned to a cone around the target's bearing, wherever the
+     * target is in sight and no building or confinement edge is near. Routes can then be shorter, without tripling
+     * the neighbours of every expansion. Only forward searches are affected.
+     *
+     * @param conePruning true to search every angle with pruning.
+     */
+    public void setConePruning(boolean conePruning) {
+        this.conePruning = conePruning;
+    }
+
+    public int getNodesPruned() {
+        return nodesPruned;
+    }
+
+    public int getNodesExpanded() {
+        return nodesExpanded;
+    }
+
+    public int getNodesExpandedBackward() {
+        return nodesExpandedBackward;
+    }
+
+    public int getCoarseExpansions() {
+        return coarseExpansions;
+    }
+
+    public boolean isCorridorFallback() {
+        return corridorFallback;
+    }
+
+    public int getFinestIncrementCompleted() {
+        return finestIncrementCompleted;
+    }
+
+    public double getBoundAchieved() {
+        return boundAchieved;
+    }
+
+    public int getNodesReopened() {
+        return nodesReopened;
+    }
 }
@@ -16,4 +16,25 @@ public interface PathfindingInterface {
      * @return a collection of pathfinding nodes.
      */
     List<PathfindingNode> routeTo(LongLat startLL, LongLat endLL);
+
+    /**
+     * Computes a route from one LongLat to another which is at most (1 + epsilon) times as long as the shortest.
+     * A larger epsilon allows a faster search.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @param epsilon how far above the shortest the route may be, as a fraction. 0 finds the shortest.
+     * @return a collection of pathfinding nodes.
+     */
+    List<PathfindingNode> weightedRouteTo(LongLat startLL, LongLat endLL, double epsilon);
+
+    /**
+     * Computes a route from one LongLat to another quickly, then improves it until a time budget runs out.
+     *
+     * @param startLL     location to start at
+     * @param endLL       location to end 'close-to'
+     * @param budgetNanos time allowed for improving the route, in nanoseconds.
+     * @return the best collection of pathfinding nodes found in time.
+     */
+    List<PathfindingNode> anytimeRouteTo(LongLat startLL, LongLat endLL, long budgetNanos);
 }
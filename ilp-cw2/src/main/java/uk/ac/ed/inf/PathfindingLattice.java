@@ -0,0 +1,136 @@
+package uk.ac.ed.inf;
+
+/**
+ * The integer lattice that pathfinding searches on.
+ * A position is held as a whole number of lattice units east and north of the confinement area's south-west
+ * corner, and the step for every legal angle is a whole number of units, chosen once. The position after a sequence
+ * of moves is then an exact integer sum, so any ordering of the same moves lands on exactly the same coordinates,
+ * and equal coordinates always pack into the same primitive key.
+ * Rounding a step to the nearest units can leave its length a few thousandths of a millimetre out, more than a
+ * move is allowed, so each step is instead the whole-unit step nearest its angle whose length is within tolerance.
+ */
+public class PathfindingLattice {
+
+    /**
+     * Size of one lattice unit in degrees. Coarse enough that a double can land on every unit at Edinburgh's
+     * latitude, where doubles are ~7E-15 degrees apart, and fine enough that a step of the right length is never
+     * far from its angle. Every position within ~0.02 degrees of the confinement area then has 32-bit coordinates,
+     * so keys keep every bit.
+     */
+    protected static final double UNIT = 1E-11;
+
+    /** Most a step's length may differ from a move's, in lattice units, half the tolerance moves are checked to */
+    private static final double LENGTH_TOLERANCE = 0.05;
+
+    /** Furthest a step is looked for from its rounded position, in lattice units across the step */
+    private static final int SEARCH_RADIUS = 64;
+
+    /** Number of legal angles a drone can move in */
+    protected static final int ANGLE_COUNT = LongLat.ANGLE_COUNT;
+
+    /** Eastward step in lattice units for each angle index */
+    private static final long[] STEP_X = new long[ANGLE_COUNT];
+
+    /** Northward step in lattice units for each angle index */
+    private static final long[] STEP_Y = new long[ANGLE_COUNT];
+
+    static {
+        double length = LongLat.STRAIGHT_LINE_DISTANCE / UNIT;
+        for (int i = 0; i < ANGLE_COUNT; i++) {
+            double exactX = LongLat.stepLongitude(i) / UNIT;
+            double exactY = LongLat.stepLatitude(i) / UNIT;
+            //try each whole number of units across the step, and the nearest whole number along it.
+            boolean alongX = Math.abs(exactX) >= Math.abs(exactY);
+            long across = Math.round(alongX ? exactY : exactX);
+            double sign = Math.signum(alongX ? exactX : exactY);
+            double nearest = Double.POSITIVE_INFINITY;
+            for (long a = across - SEARCH_RADIUS; a <= across + SEARCH_RADIUS; a++) {
+                long along = Math.round(sign * Math.sqrt(length * length - (double) a * a));
+                long x = alongX ? along : a;
+                long y = alongX ? a : along;
+                double off = Math.hypot(x - exactX, y - exactY);
+                if (Math.abs(Math.hypot(x, y) - length) <= LENGTH_TOLERANCE && off < nearest) {
+                    STEP_X[i] = x;
+                    STEP_Y[i] = y;
+                    nearest = off;
+                }
+            }
+            if (nearest == Double.POSITIVE_INFINITY) {
+                throw new IllegalStateException("No lattice step of the right length for angle " + angleOf(i));
+            }
+        }
+    }
+
+    /**
+     * Convert a legal angle into its index in the step tables.
+     *
+     * @param angle multiple of the angle interval from minimum to maximum angle.
+     * @return index of the angle.
+     * @throws IllegalArgumentException if angle is not a legal move.
+     */
+    public static int indexOf(int angle) {
+        if (angle < LongLat.MIN_ANGLE || angle > LongLat.MAX_ANGLE || angle % LongLat.ANGLE_INTERVAL != 0) {
+            throw new IllegalArgumentException("Angle given is out of bounds.");
+        }
+        return (angle - LongLat.MIN_ANGLE) / LongLat.ANGLE_INTERVAL;
+    }
+
+    /**
+     * Convert an index in the step tables back into its angle.
+     *
+     * @param index of the angle.
+     * @return angle in degrees.
+     */
+    public static int angleOf(int index) {
+        return LongLat.MIN_ANGLE + index * LongLat.ANGLE_INTERVAL;
+    }
+
+    public static long stepX(int index) {
+        return STEP_X[index];
+    }
+
+    public static long stepY(int index) {
+        return STEP_Y[index];
+    }
+
+    /**
+     * Nearest lattice x coordinate of a longitude.
+     *
+     * @param longitude in degrees.
+     * @return x coordinate in lattice units.
+     */
+    public static long toX(double longitude) {
+        return Math.round((longitude - LongLat.CONFINEMENT_LONGITUDE_WEST) / UNIT);
+    }
+
+    /**
+     * Nearest lattice y coordinate of a latitude.
+     *
+     * @param latitude in degrees.
+     * @return y coordinate in lattice units.
+     */
+    public static long toY(double latitude) {
+        return Math.round((latitude - LongLat.CONFINEMENT_LATITUDE_SOUTH) / UNIT);
+    }
+
+    public static double toLongitude(long x) {
+        return LongLat.CONFINEMENT_LONGITUDE_WEST + x * UNIT;
+    }
+
+    public static double toLatitude(long y) {
+        return LongLat.CONFINEMENT_LATITUDE_SOUTH + y * UNIT;
+    }
+
+    /**
+     * Pack lattice coordinates into a single key.
+     * Positions with equal coordinates always have equal keys, and positions with different coordinates different
+     * keys while both coordinates fit in 32 bits.
+     *
+     * @param x coordinate in lattice units.
+     * @param y coordinate in lattice units.
+     * @return key for the position.
+     */
+    public static long key(long x, long y) {
+        return (x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,128 @@
+package uk.ac.ed.inf;
+
+/**
+ * Reusable buffer holding the neighbours of one pathfinding node as lattice positions.
+ * It is refilled on every expansion, so generating neighbours does not allocate.
+ */
+public class PathfindingNeighbours {
+
+    /** Lattice x coordinate of each neighbour */
+    private final long[] xs = new long[PathfindingLattice.ANGLE_COUNT];
+
+    /** Lattice y coordinate of each neighbour */
+    private final long[] ys = new long[PathfindingLattice.ANGLE_COUNT];
+
+    /** Angle taken to reach each neighbour */
+    private final int[] angles = new int[PathfindingLattice.ANGLE_COUNT];
+
+    /** Index in the step tables of the angle taken to reach each neighbour */
+    private final int[] angleIndexes = new int[PathfindingLattice.ANGLE_COUNT];
+
+    /** Number of neighbours currently held */
+    private int size = 0;
+
+    /**
+     * Empty the buffer ready to be refilled.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Refill the buffer with every neighbour of a lattice position.
+     *
+     * @param x   lattice x coordinate.
+     * @param y   lattice y coordinate.
+     * @param inc of how far the next neighbour should be in degrees.
+     */
+    public void fill(long x, long y, int inc) {
+        clear();
+        for (int i = LongLat.MIN_ANGLE; i <= LongLat.MAX_ANGLE; i += inc) {
+            int index = PathfindingLattice.indexOf(i);
+            add(x + PathfindingLattice.stepX(index), y + PathfindingLattice.stepY(index), i);
+        }
+    }
+
+    /**
+     * Refill the buffer with only the neighbours whose heading is within a cone around a bearing.
+     * Every legal angle is considered, so the cone is centred on the legal angle nearest the bearing.
+     *
+     * @param x         lattice x coordinate.
+     * @param y         lattice y coordinate.
+     * @param bearing   direction to head in, in degrees anticlockwise from east.
+     * @param halfWidth largest angle either side of the bearing to include, in degrees.
+     */
+    public void fillCone(long x, long y, double bearing, int halfWidth) {
+        clear();
+        int centre = (int) Math.round(bearing / LongLat.ANGLE_INTERVAL) * LongLat.ANGLE_INTERVAL;
+        int full = LongLat.MAX_ANGLE + LongLat.ANGLE_INTERVAL;
+        for (int offset = -halfWidth; offset <= halfWidth; offset += LongLat.ANGLE_INTERVAL) {
+            int i = Math.floorMod(centre + offset, full);
+            int index = PathfindingLattice.indexOf(i);
+            add(x + PathfindingLattice.stepX(index), y + PathfindingLattice.stepY(index), i);
+        }
+    }
+
+    /**
+     * Refill the buffer with every position a lattice position can be reached from in one move.
+     * Each is stored with the angle flown from it to reach the given position.
+     *
+     * @param x   lattice x coordinate.
+     * @param y   lattice y coordinate.
+     * @param inc of how far the next neighbour should be in degrees.
+     */
+    public void fillReverse(long x, long y, int inc) {
+        clear();
+        for (int i = LongLat.MIN_ANGLE; i <= LongLat.MAX_ANGLE; i += inc) {
+            int index = PathfindingLattice.indexOf(i);
+            add(x - PathfindingLattice.stepX(index), y - PathfindingLattice.stepY(index), i);
+        }
+    }
+
+    /**
+     * Add a neighbour to the buffer.
+     *
+     * @param x     lattice x coordinate.
+     * @param y     lattice y coordinate.
+     * @param angle angle taken to reach it.
+     */
+    public void add(long x, long y, int angle) {
+        xs[size] = x;
+        ys[size] = y;
+        angles[size] = angle;
+        angleIndexes[size] = PathfindingLattice.indexOf(angle);
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getX(int i) {
+        return xs[i];
+    }
+
+    public long getY(int i) {
+        return ys[i];
+    }
+
+    public int getAngle(int i) {
+        return angles[i];
+    }
+
+    public int getAngleIndex(int i) {
+        return angleIndexes[i];
+    }
+
+    public double getLongitude(int i) {
+        return PathfindingLattice.toLongitude(xs[i]);
+    }
+
+    public double getLatitude(int i) {
+        return PathfindingLattice.toLatitude(ys[i]);
+    }
+
+    public long getKey(int i) {
+        return PathfindingLattice.key(xs[i], ys[i]);
+    }
+}
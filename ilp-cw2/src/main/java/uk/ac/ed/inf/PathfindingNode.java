@@ -4,6 +4,9 @@ import java.util.ArrayList;
 
 /**
  * An expansion of LongLat for use in the A* pathfinding.
+ * Nodes also hold their position on the integer pathfinding lattice, which is what identifies them. The location a
+ * node is flown to is kept apart from it: it is offset from its lattice position just as the exact location the
+ * route started at is, so every move between nodes is exactly a lattice step long.
  */
 public class PathfindingNode extends LongLat implements Comparable<PathfindingNode> {
 
@@ -19,14 +22,69 @@ public class PathfindingNode extends LongLat implements Comparable<PathfindingNo
     /** Pointer to parent node in pathfinding which came before */
     private PathfindingNode parent;
 
+    /** Lattice x coordinate */
+    private final long x;
+
+    /** Lattice y coordinate */
+    private final long y;
+
+    /** Packed lattice key, equal for nodes at equal lattice positions */
+    private final long key;
+
+    /** Longitude of the route's start less that of its lattice position, shared by every node placed from it */
+    private final double offsetLongitude;
+
+    /** Latitude of the route's start less that of its lattice position, shared by every node placed from it */
+    private final double offsetLatitude;
+
     /**
      * Create using longitude and latitude, like its parent, LongLat.
+     * The exact location is kept, and it is snapped to the nearest lattice position for identification.
      *
      * @param longitude of location
      * @param latitude  of location.
      */
     public PathfindingNode(double longitude, double latitude) {
         super(longitude, latitude);
+        this.x = PathfindingLattice.toX(longitude);
+        this.y = PathfindingLattice.toY(latitude);
+        this.key = PathfindingLattice.key(x, y);
+        this.offsetLongitude = longitude - PathfindingLattice.toLongitude(x);
+        this.offsetLatitude = latitude - PathfindingLattice.toLatitude(y);
+    }
+
+    /**
+     * Create with both the location and lattice position given.
+     *
+     * @param longitude       of location.
+     * @param latitude        of location.
+     * @param x               lattice x coordinate.
+     * @param y               lattice y coordinate.
+     * @param offsetLongitude of the route's start from its lattice position.
+     * @param offsetLatitude  of the route's start from its lattice position.
+     */
+    private PathfindingNode(double longitude, double latitude, long x, long y,
+                            double offsetLongitude, double offsetLatitude) {
+        super(longitude, latitude);
+        this.x = x;
+        this.y = y;
+        this.key = PathfindingLattice.key(x, y);
+        this.offsetLongitude = offsetLongitude;
+        this.offsetLatitude = offsetLatitude;
+    }
+
+    /**
+     * Create a node at a lattice position of the same route, offset from it as the route's start is.
+     * Nodes placed from the same start are then exactly their lattice steps apart, whatever the start's distance
+     * from the lattice, and equal lattice positions always get equal locations.
+     *
+     * @param x lattice x coordinate.
+     * @param y lattice y coordinate.
+     * @return node at the lattice position.
+     */
+    public PathfindingNode at(long x, long y) {
+        return new PathfindingNode(PathfindingLattice.toLongitude(x) + offsetLongitude,
+                PathfindingLattice.toLatitude(y) + offsetLatitude, x, y, offsetLongitude, offsetLatitude);
     }
 
     /**
@@ -46,6 +104,29 @@ public class PathfindingNode extends LongLat implements Comparable<PathfindingNo
         return neighbours;
     }
 
+    /**
+     * Generate all possible neighbours into a reusable buffer, without creating any nodes.
+     * Restrict by setting the increment of angle.
+     *
+     * @param inc  of how far the next neighbour should be in degrees.
+     * @param into buffer to fill, its previous contents are discarded.
+     */
+    public void generateNeighbours(int inc, PathfindingNeighbours into) {
+        into.fill(x, y, inc);
+    }
+
+    /**
+     * Generate only the neighbours heading roughly towards a goal into a reusable buffer.
+     * Only suitable where nothing is in the way, as the route may need to turn further than the cone allows.
+     *
+     * @param goal      location being headed for.
+     * @param halfWidth largest angle either side of the goal's bearing to include, in degrees.
+     * @param into      buffer to fill, its previous contents are discarded.
+     */
+    public void generateNeighbours(LongLat goal, int halfWidth, PathfindingNeighbours into) {
+        into.fillCone(x, y, bearingTo(getLongitude(), getLatitude(), goal), halfWidth);
+    }
+
     /**
      * Generate a LongLat from this node.
      * Could also be done with casting.
@@ -89,14 +170,20 @@ public class PathfindingNode extends LongLat implements Comparable<PathfindingNo
 
     /**
      * Generate a new node for new location after a move by angle.
+     * The move is made on the lattice, so the same moves in any order reach the same node, and the location moves
+     * by exactly the lattice step.
      *
-     * @param angle if the angle is from 0 to 350 and a multiple of 10 then the drone moves.
+     * @param angle if the angle is from 0 to 350 and a multiple of 10 then the drone moves, for -999 it hovers.
      * @return node of new location.
+     * @throws IllegalArgumentException if angle is not within the allowed bounds.
      */
     @Override
     public PathfindingNode nextPosition(int angle) {
-        LongLat x = super.nextPosition(angle);
-        return new PathfindingNode(x.getLongitude(), x.getLatitude());
+        if (angle == LongLat.JUNK_ANGLE) {
+            return new PathfindingNode(getLongitude(), getLatitude(), x, y, offsetLongitude, offsetLatitude);
+        }
+        int i = PathfindingLattice.indexOf(angle);
+        return at(x + PathfindingLattice.stepX(i), y + PathfindingLattice.stepY(i));
     }
 
     /**
@@ -140,4 +227,16 @@ public class PathfindingNode extends LongLat implements Comparable<PathfindingNo
     public void setParent(PathfindingNode parent) {
         this.parent = parent;
     }
+
+    public long getX() {
+        return x;
+    }
+
+    public long getY() {
+        return y;
+    }
+
+    public long getKey() {
+        return key;
+    }
 }
@@ -0,0 +1,489 @@
+package uk.ac.ed.inf;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread storage for A* searches, kept alive from one search to the next.
+ * Nodes live in slots of primitive arrays laid over the confinement area: a position's home slot is the grid cell
+ * it falls in, so nodes near each other in space are near each other in memory, and a taken slot overflows into
+ * the next. A generation counter marks which slots belong to the current search, so resetting between searches
+ * is a single increment rather than clearing the arrays.
+ */
+public class PathfindingWorkspace {
+
+    /** Grid cells per move length along each axis, before any growth */
+    private static final int INITIAL_CELLS_PER_MOVE = 8;
+
+    /** Fraction of slots which may be used before the grid is made finer */
+    private static final double MAX_LOAD = 0.5;
+
+    /** Parent of the start node */
+    protected static final int NO_SLOT = -1;
+
+    /** Width of the confinement area in lattice units */
+    private static final long WIDTH = PathfindingLattice.toX(LongLat.CONFINEMENT_LONGITUDE_EAST);
+
+    /** Height of the confinement area in lattice units */
+    private static final long HEIGHT = PathfindingLattice.toY(LongLat.CONFINEMENT_LATITUDE_NORTH);
+
+    /** One workspace per thread */
+    private static final ThreadLocal<PathfindingWorkspace> WORKSPACES =
+            ThreadLocal.withInitial(PathfindingWorkspace::new);
+
+    /** A second workspace per thread, for the backward half of a bidirectional search */
+    private static final ThreadLocal<PathfindingWorkspace> REVERSE_WORKSPACES =
+            ThreadLocal.withInitial(PathfindingWorkspace::new);
+
+    /** Side of one grid cell in lattice units */
+    private long cellSize;
+
+    /** Number of grid columns over the confinement area */
+    private int cols;
+
+    /** Number of grid rows over the confinement area */
+    private int rows;
+
+    /** Generation of the current search, slots stamped with any other value are empty */
+    private int generation = 0;
+
+    /** Number of slots in use by the current search */
+    private int used;
+
+    /** Generation each slot was last written in */
+    private int[] stamp;
+
+    /** Lattice x coordinate of the node in each slot */
+    private long[] xs;
+
+    /** Lattice y coordinate of the node in each slot */
+    private long[] ys;
+
+    /** 'g' weight of each slot */
+    private double[] g;
+
+    /** 'f' weight of each slot */
+    private double[] f;
+
+    /** Slot of the parent of each slot */
+    private int[] parent;
+
+    /** Angle taken from the parent to reach each slot */
+    private short[] angle;
+
+    /** Closed flags, one bit per slot */
+    private long[] closed;
+
+    /** Generation each word of closed flags was last written in */
+    private int[] closedStamp;
+
+    /** Open list as an implicit binary heap of slots ordered on f */
+    private int[] heap;
+
+    /** Number of slots in the open list */
+    private int heapSize;
+
+    /** Position in the open list of each slot, or -1 if it is not in it */
+    private int[] heapPos;
+
+    /** Buffer for the neighbours of the node being expanded */
+    private final PathfindingNeighbours neighbours = new PathfindingNeighbours();
+
+    /**
+     * Created per thread through get(), so private constructor.
+     */
+    private PathfindingWorkspace() {
+        allocate(Math.round(LongLat.STRAIGHT_LINE_DISTANCE / PathfindingLattice.UNIT / INITIAL_CELLS_PER_MOVE));
+    }
+
+    /**
+     * Get the workspace of the calling thread, emptied ready for a new search.
+     *
+     * @return workspace owned by this thread.
+     */
+    public static PathfindingWorkspace get() {
+        var workspace = WORKSPACES.get();
+        workspace.reset();
+        return workspace;
+    }
+
+    /**
+     * Get the calling thread's second workspace, emptied ready for a new search.
+     * Used alongside get() when two searches run at once.
+     *
+     * @return second workspace owned by this thread.
+     */
+    public static PathfindingWorkspace getReverse() {
+        var workspace = REVERSE_WORKSPACES.get();
+        workspace.reset();
+        return workspace;
+    }
+
+    /**
+     * Empty the workspace by moving on to a new generation.
+     */
+    public void reset() {
+        generation++;
+        if (generation == Integer.MAX_VALUE) { //only once in billions of searches is a real clear needed.
+            Arrays.fill(stamp, 0);
+            Arrays.fill(closedStamp, 0);
+            generation = 1;
+        }
+        used = 0;
+        heapSize = 0;
+    }
+
+    /**
+     * Make sure a number of nodes can be added without the grid growing.
+     * Growing moves nodes to new slots, so this must only be called while no slot numbers are held.
+     *
+     * @param count of nodes that may be added before the next call.
+     */
+    public void ensureCapacity(int count) {
+        while (used + count > MAX_LOAD * stamp.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Find the slot holding a lattice position, adding a node for it if there is none.
+     * A new node has infinite weights, no parent, and is neither open nor closed.
+     *
+     * @param x lattice x coordinate.
+     * @param y lattice y coordinate.
+     * @return slot of the node.
+     * @throws IllegalStateException if every slot is taken, ensureCapacity should have been called.
+     */
+    public int slotOf(long x, long y) {
+        int slot = find(x, y);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (used == stamp.length) {
+            throw new IllegalStateException("Pathfinding workspace is full.");
+        }
+        slot = insertionSlot(x, y);
+        stamp[slot] = generation;
+        xs[slot] = x;
+        ys[slot] = y;
+        g[slot] = Double.MAX_VALUE;
+        f[slot] = Double.MAX_VALUE;
+        parent[slot] = NO_SLOT;
+        angle[slot] = LongLat.JUNK_ANGLE;
+        heapPos[slot] = -1;
+        setClosed(slot, false);
+        used++;
+        return slot;
+    }
+
+    /**
+     * Find the slot holding a lattice position.
+     *
+     * @param x lattice x coordinate.
+     * @param y lattice y coordinate.
+     * @return slot of the node, or -1 if there is none in this search.
+     */
+    public int find(long x, long y) {
+        int n = stamp.length;
+        for (int i = homeSlot(x, y); stamp[i] == generation; i = (i + 1 == n) ? 0 : i + 1) {
+            if (xs[i] == x && ys[i] == y) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int size() {
+        return used;
+    }
+
+    public PathfindingNeighbours getNeighbours() {
+        return neighbours;
+    }
+
+    public long getX(int slot) {
+        return xs[slot];
+    }
+
+    public long getY(int slot) {
+        return ys[slot];
+    }
+
+    public double getLongitude(int slot) {
+        return PathfindingLattice.toLongitude(xs[slot]);
+    }
+
+    public double getLatitude(int slot) {
+        return PathfindingLattice.toLatitude(ys[slot]);
+    }
+
+    public double getG(int slot) {
+        return g[slot];
+    }
+
+    public double getF(int slot) {
+        return f[slot];
+    }
+
+    public int getParent(int slot) {
+        return parent[slot];
+    }
+
+    public int getAngle(int slot) {
+        return angle[slot];
+    }
+
+    /**
+     * Record the route to a slot.
+     *
+     * @param slot   to update.
+     * @param from   slot of the parent.
+     * @param angle  taken from the parent.
+     * @param gValue 'g' weight of the route.
+     * @param fValue 'f' weight of the route.
+     */
+    public void setRoute(int slot, int from, int angle, double gValue, double fValue) {
+        this.parent[slot] = from;
+        this.angle[slot] = (short) angle;
+        this.g[slot] = gValue;
+        this.f[slot] = fValue;
+    }
+
+    /**
+     * Check the closed flag of a slot, treating flags from earlier generations as clear.
+     *
+     * @param slot to check.
+     * @return true if the node has been expanded and not reopened since.
+     */
+    public boolean isClosed(int slot) {
+        int word = slot >>> 6;
+        return closedStamp[word] == generation && (closed[word] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Set or clear the closed flag of a slot.
+     *
+     * @param slot     to update.
+     * @param isClosed new value of the flag.
+     */
+    public void setClosed(int slot, boolean isClosed) {
+        int word = slot >>> 6;
+        if (closedStamp[word] != generation) {
+            closedStamp[word] = generation;
+            closed[word] = 0;
+        }
+        if (isClosed) {
+            closed[word] |= 1L << slot;
+        } else {
+            closed[word] &= ~(1L << slot);
+        }
+    }
+
+    /**
+     * Add a slot to the open list, or restore its place after its f weight has decreased.
+     *
+     * @param slot to add or update.
+     */
+    public void pushOrDecrease(int slot) {
+        if (heapPos[slot] < 0) {
+            heap[heapSize] = slot;
+            heapPos[slot] = heapSize;
+            heapSize++;
+        }
+        siftUp(heapPos[slot]);
+    }
+
+    /**
+     * Remove the slot with the lowest f weight from the open list.
+     *
+     * @return slot with lowest f weight.
+     */
+    public int popOpen() {
+        int top = heap[0];
+        heapSize--;
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPos[heap[0]] = 0;
+            siftDown(0);
+        }
+        heapPos[top] = -1;
+        return top;
+    }
+
+    public boolean isOpen(int slot) {
+        return heapPos[slot] >= 0;
+    }
+
+    public boolean hasOpen() {
+        return heapSize > 0;
+    }
+
+    public int getOpenCount() {
+        return heapSize;
+    }
+
+    /**
+     * Get a slot in the open list, in no particular order.
+     *
+     * @param i index from 0 up to the open count.
+     * @return slot at that place in the open list.
+     */
+    public int getOpen(int i) {
+        return heap[i];
+    }
+
+    /**
+     * Get the lowest f weight in the open list without removing it.
+     *
+     * @return lowest f weight, or infinity if the open list is empty.
+     */
+    public double getTopF() {
+        return heapSize > 0 ? f[heap[0]] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Move a heap entry up until its parent is no larger.
+     *
+     * @param i index in the heap.
+     */
+    private void siftUp(int i) {
+        int slot = heap[i];
+        double key = f[slot];
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (f[heap[up]] <= key) {
+                break;
+            }
+            heap[i] = heap[up];
+            heapPos[heap[i]] = i;
+            i = up;
+        }
+        heap[i] = slot;
+        heapPos[slot] = i;
+    }
+
+    /**
+     * Move a heap entry down until both of its children are no smaller.
+     *
+     * @param i index in the heap.
+     */
+    private void siftDown(int i) {
+        int slot = heap[i];
+        double key = f[slot];
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && f[heap[child + 1]] < f[heap[child]]) {
+                child++;
+            }
+            if (key <= f[heap[child]]) {
+                break;
+            }
+            heap[i] = heap[child];
+            heapPos[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = slot;
+        heapPos[slot] = i;
+    }
+
+    /**
+     * Grid cell a position falls in, used as its home slot.
+     * Positions outside the confinement area are clamped onto its edge.
+     *
+     * @param x lattice x coordinate.
+     * @param y lattice y coordinate.
+     * @return home slot.
+     */
+    private int homeSlot(long x, long y) {
+        int col = (int) Math.max(0, Math.min(cols - 1, x / cellSize));
+        int row = (int) Math.max(0, Math.min(rows - 1, y / cellSize));
+        return row * cols + col;
+    }
+
+    /**
+     * First free slot at or after the home slot of a position.
+     *
+     * @param x lattice x coordinate.
+     * @param y lattice y coordinate.
+     * @return free slot.
+     */
+    private int insertionSlot(long x, long y) {
+        int n = stamp.length;
+        int i = homeSlot(x, y);
+        while (stamp[i] == generation) {
+            i = (i + 1 == n) ? 0 : i + 1;
+        }
+        return i;
+    }
+
+    /**
+     * Allocate the arrays for a grid of the given cell size.
+     *
+     * @param size side of a cell in lattice units.
+     */
+    private void allocate(long size) {
+        cellSize = size;
+        cols = (int) (WIDTH / cellSize) + 1;
+        rows = (int) (HEIGHT / cellSize) + 1;
+        int n = cols * rows;
+        stamp = new int[n];
+        xs = new long[n];
+        ys = new long[n];
+        g = new double[n];
+        f = new double[n];
+        parent = new int[n];
+        angle = new short[n];
+        heap = new int[n];
+        heapPos = new int[n];
+        closed = new long[(n + 63) >>> 6];
+        closedStamp = new int[closed.length];
+    }
+
+    /**
+     * Halve the cell size, which quadruples the slots, and move every node of the current search across.
+     * The finer grid is kept for later searches on this thread.
+     */
+    private void grow() {
+        int oldN = stamp.length;
+        int[] oldStamp = stamp;
+        long[] oldXs = xs;
+        long[] oldYs = ys;
+        double[] oldG = g;
+        double[] oldF = f;
+        int[] oldParent = parent;
+        short[] oldAngle = angle;
+        int[] oldHeapPos = heapPos;
+        boolean[] wasClosed = new boolean[oldN];
+        for (int i = 0; i < oldN; i++) {
+            wasClosed[i] = oldStamp[i] == generation && isClosed(i);
+        }
+
+        allocate(cellSize / 2);
+        int[] moved = new int[oldN];
+        for (int i = 0; i < oldN; i++) {
+            if (oldStamp[i] == generation) {
+                int slot = insertionSlot(oldXs[i], oldYs[i]);
+                moved[i] = slot;
+                stamp[slot] = generation;
+                xs[slot] = oldXs[i];
+                ys[slot] = oldYs[i];
+                g[slot] = oldG[i];
+                f[slot] = oldF[i];
+                angle[slot] = oldAngle[i];
+                heapPos[slot] = -1;
+                setClosed(slot, wasClosed[i]);
+            }
+        }
+
+        heapSize = 0;
+        for (int i = 0; i < oldN; i++) {
+            if (oldStamp[i] == generation) {
+                int slot = moved[i];
+                parent[slot] = oldParent[i] == NO_SLOT ? NO_SLOT : moved[oldParent[i]];
+                if (oldHeapPos[i] >= 0) {
+                    pushOrDecrease(slot);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+
+/**
+ * Builds the day's path from whichever of a portfolio of tour strategies plans the most valuable tour, running them
+ * all at once for a time budget. The winning plan is then flown as any other, so the drone still checks it can get
+ * home in time.
+ */
+public class PortfolioPathBuilder extends PathBuilder {
+
+    /** Time the portfolio may take in milliseconds */
+    private final long portfolioBudgetMillis;
+
+    /** Portfolio of the last tour planned, kept for its report */
+    private TourPortfolio portfolio;
+
+    /**
+     * Construct by providing today's orders and how long the portfolio may take.
+     *
+     * @param todaysOrders          order handler for today's orders.
+     * @param portfolioBudgetMillis time the portfolio may take in milliseconds.
+     */
+    public PortfolioPathBuilder(OrderHandler todaysOrders, long portfolioBudgetMillis) {
+        super(todaysOrders);
+        this.portfolioBudgetMillis = portfolioBudgetMillis;
+    }
+
+    /**
+     * Choose the orders to deliver with the winning strategy, followed by every order it left out. Only the orders
+     * chosen are flown, and those left out are counted as lost.
+     *
+     * @return ArrayList of every order, those chosen first in the order they will be flown.
+     */
+    @Override
+    protected ArrayList<String> choosePerm() {
+        portfolio = new TourPortfolio(getMoveMatrix(), getHomeMoves(), orderValues(), MOVES_ALLOWED);
+        portfolio.addStandard(getTourMatrix());
+        int[] chosen = portfolio.run(portfolioBudgetMillis * 1_000_000);
+        System.out.println("PORTFOLIO: " + portfolio.getWinner() + " won" + portfolio);
+        return chosenFirst(chosen);
+    }
+
+    public TourPortfolio getPortfolio() {
+        return portfolio;
+    }
+}
@@ -0,0 +1,363 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of routes found by pathfinding, shared by everything that flies or measures the drone.
+ * Routes are keyed on the exact end, the square of a 'close-to' sized grid the start is in, and the version of the
+ * no-fly zones, and the least recently used route is evicted once the cache is full.
+ * The drone hovers wherever its last leg happened to end, so a leg rarely starts exactly where an earlier one did.
+ * A route is therefore reused for any start 'close-to' the one it was found from: the squares around the start are
+ * looked in, and a route found there is replayed from the exact start asked for, stopping as soon as it is
+ * 'close-to' the end. It is only used if every move is still confined and clear of the no-fly zones.
+ */
+public class RouteCache implements PathfindingInterface {
+
+    /** Most routes kept at once */
+    protected static final int CAPACITY = 4096;
+
+    /** Side of the grid starts are snapped to in lattice units, so starts 'close-to' each other are a square apart */
+    private static final long QUANTUM = Math.round(LongLat.CLOSE_TO_DISTANCE / PathfindingLattice.UNIT);
+
+    /** Offsets of the squares looked in around the start's square, its own first */
+    private static final int[][] NEIGHBOURHOOD = {
+            {0, 0}, {-1, -1}, {0, -1}, {1, -1}, {-1, 0}, {1, 0}, {-1, 1}, {0, 1}, {1, 1}};
+
+    /** Pointer to instance */
+    private static RouteCache instance = null;
+
+    /** Instance of No-Fly zones, whose version routes are keyed on */
+    private final NoFlyZones myNoFlyZones = NoFlyZones.getInstance();
+
+    /** Each cached route, in access order so the eldest is least recently used */
+    private final LinkedHashMap<Key, Route> routes;
+
+    /** Lookups answered from the cache */
+    private long hits = 0;
+
+    /** Lookups which needed a search */
+    private long misses = 0;
+
+    /** Routes dropped to stay within capacity */
+    private long evictions = 0;
+
+    /**
+     * Uses a singleton pattern, so it has a private constructor.
+     */
+    private RouteCache() {
+        this.routes = new LinkedHashMap<>(CAPACITY, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest) {
+                if (size() > CAPACITY) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the instance of RouteCache
+     * Will be created if it doesn't exist
+     *
+     * @return RouteCache object
+     */
+    public static synchronized RouteCache getInstance() {
+        if (instance == null) {
+            instance = new RouteCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Get the route from one LongLat to another, searching only if it is not already cached.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @return a collection of pathfinding nodes, beginning at the start.
+     */
+    @Override
+    public List<PathfindingNode> routeTo(LongLat startLL, LongLat endLL) {
+        return cachedRoute(startLL, endLL, () -> new Pathfinding().routeTo(startLL, endLL));
+    }
+
+    /**
+     * Get the route from one LongLat to another, refining it within a time budget if it is not already cached.
+     * A cached route is used whatever budget it was found with.
+     *
+     * @param startLL     location to start at
+     * @param endLL       location to end 'close-to'
+     * @param budgetNanos time allowed for improving the route, in nanoseconds.
+     * @return a collection of pathfinding nodes, beginning at the start.
+     */
+    @Override
+    public List<PathfindingNode> anytimeRouteTo(LongLat startLL, LongLat endLL, long budgetNanos) {
+        return cachedRoute(startLL, endLL, () -> new Pathfinding().anytimeRouteTo(startLL, endLL, budgetNanos));
+    }
+
+    /**
+     * Look a route up, searching for it and remembering it if it is not cached.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @param search  to run if the route is not cached.
+     * @return a collection of pathfinding nodes, beginning at the start.
+     */
+    private List<PathfindingNode> cachedRoute(LongLat startLL, LongLat endLL, Supplier<List<PathfindingNode>> search) {
+        var cached = lookup(startLL, endLL);
+        if (cached != null) {
+            return cached;
+        }
+
+        var path = search.get();
+        synchronized (this) {
+            misses++;
+        }
+        put(startLL, endLL, path);
+        return path;
+    }
+
+    /**
+     * Find a cached route to a location from anywhere 'close-to' a start, replayed from the exact start.
+     *
+     * @param startLL location to start at.
+     * @param endLL   location to end 'close-to'.
+     * @return a collection of pathfinding nodes, beginning at the start, or null if no cached route can be used.
+     */
+    protected List<PathfindingNode> lookup(LongLat startLL, LongLat endLL) {
+        var zones = myNoFlyZones.getSnapshot();
+        int version = zones.getVersion();
+        long col = columnOf(startLL);
+        long row = rowOf(startLL);
+        long end = PathfindingLattice.key(PathfindingLattice.toX(endLL.getLongitude()),
+                PathfindingLattice.toY(endLL.getLatitude()));
+
+        for (int[] offset : NEIGHBOURHOOD) {
+            var key = new Key(col + offset[0], row + offset[1], end, version);
+            Route route;
+            synchronized (this) {
+                route = routes.get(key);
+            }
+            if (route != null && startLL.closeTo(route.start)) {
+                var path = replay(startLL, route.angles, endLL);
+                if (path != null && isFlyable(path, zones)) {
+                    synchronized (this) {
+                        hits++;
+                    }
+                    return path;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a route within a bound of the shortest. These are not cached, as each epsilon gives a different route.
+     *
+     * @param startLL location to start at
+     * @param endLL   location to end 'close-to'
+     * @param epsilon how far above the shortest the route may be, as a fraction.
+     * @return a collection of pathfinding nodes, beginning at the start.
+     */
+    @Override
+    public List<PathfindingNode> weightedRouteTo(LongLat startLL, LongLat endLL, double epsilon) {
+        return new Pathfinding().weightedRouteTo(startLL, endLL, epsilon);
+    }
+
+    /**
+     * Remember a route, replacing any found from the same square to the same end.
+     * Failed searches, which hold only the start, are not remembered.
+     *
+     * @param startLL location the route starts at.
+     * @param endLL   location the route ends 'close-to'.
+     * @param path    collection of pathfinding nodes, beginning at the start.
+     */
+    public void put(LongLat startLL, LongLat endLL, List<PathfindingNode> path) {
+        if (path.size() > 1) {
+            var key = new Key(columnOf(startLL), rowOf(startLL), PathfindingLattice.key(
+                    PathfindingLattice.toX(endLL.getLongitude()), PathfindingLattice.toY(endLL.getLatitude())),
+                    myNoFlyZones.getVersion());
+            var route = new Route(startLL, anglesOf(path));
+            synchronized (this) {
+                routes.put(key, route);
+            }
+        }
+    }
+
+    /**
+     * Rebuild a route by flying its angles from a start location, stopping once it is 'close-to' the end.
+     *
+     * @param startLL location to start at.
+     * @param angles  of each move in turn.
+     * @param endLL   location to end 'close-to'.
+     * @return a collection of pathfinding nodes, beginning at the start, or null if it never gets 'close-to' the end.
+     */
+    private static List<PathfindingNode> replay(LongLat startLL, int[] angles, LongLat endLL) {
+        List<PathfindingNode> path = new ArrayList<>(angles.length + 1);
+        var node = new PathfindingNode(startLL.getLongitude(), startLL.getLatitude());
+        path.add(node);
+        for (int angle : angles) {
+            var next = node.nextPosition(angle);
+            next.setAngle(angle);
+            next.setParent(node);
+            path.add(next);
+            node = next;
+            if (node.closeTo(endLL)) {
+                return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check that every move of a route stays confined and out of the no-fly zones.
+     *
+     * @param path  collection of pathfinding nodes, beginning at the start.
+     * @param zones to stay out of.
+     * @return true if the drone may fly the route.
+     */
+    private static boolean isFlyable(List<PathfindingNode> path, NoFlyZones.Snapshot zones) {
+        for (int i = 1; i < path.size(); i++) {
+            var from = path.get(i - 1);
+            var to = path.get(i);
+            if (!to.isConfined() || zones.doesIntersectNoFly(from.getLongitude(), from.getLatitude(),
+                    to.getLongitude(), to.getLatitude())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Take the angle of every move in a route.
+     *
+     * @param path collection of pathfinding nodes, beginning at the start.
+     * @return angles of each move in turn.
+     */
+    private static int[] anglesOf(List<PathfindingNode> path) {
+        int[] angles = new int[path.size() - 1];
+        for (int i = 1; i < path.size(); i++) {
+            angles[i - 1] = path.get(i).getAngle();
+        }
+        return angles;
+    }
+
+    /**
+     * Forget every cached route, the counters are kept.
+     */
+    public synchronized void clear() {
+        routes.clear();
+    }
+
+    /**
+     * Set the counters back to zero, so they cover only what follows. Cached routes are kept.
+     */
+    public synchronized void resetCounters() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Override toString to give the counters, for diagnostics.
+     *
+     * @return String of the hit, miss and eviction counters.
+     */
+    @Override
+    public synchronized String toString() {
+        return String.format("hits: %d, misses: %d, evictions: %d, size: %d", hits, misses, evictions, routes.size());
+    }
+
+    /**
+     * Square of the grid a location's longitude falls in.
+     *
+     * @param location to snap.
+     * @return column of the square.
+     */
+    private static long columnOf(LongLat location) {
+        return Math.floorDiv(PathfindingLattice.toX(location.getLongitude()), QUANTUM);
+    }
+
+    /**
+     * Square of the grid a location's latitude falls in.
+     *
+     * @param location to snap.
+     * @return row of the square.
+     */
+    private static long rowOf(LongLat location) {
+        return Math.floorDiv(PathfindingLattice.toY(location.getLatitude()), QUANTUM);
+    }
+
+    /**
+     * A cached route: where it was found from, and the angle of each move.
+     */
+    private static class Route {
+        /** Location the route was found from */
+        private final LongLat start;
+
+        /** Angle of each move in turn */
+        private final int[] angles;
+
+        private Route(LongLat start, int[] angles) {
+            this.start = start;
+            this.angles = angles;
+        }
+    }
+
+    /**
+     * Identifies a route by the grid square it starts in, its exact end, and which no-fly zones it avoids.
+     */
+    private static class Key {
+        /** Column of the start's square */
+        private final long col;
+
+        /** Row of the start's square */
+        private final long row;
+
+        /** Lattice key of the end */
+        private final long end;
+
+        /** Version of the no-fly zones */
+        private final int version;
+
+        private Key(long col, long row, long end, int version) {
+            this.col = col;
+            this.row = row;
+            this.end = end;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == null || obj.getClass() != this.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return this.col == other.col && this.row == other.row && this.end == other.end
+                    && this.version == other.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(col, row, end, version);
+        }
+    }
+}
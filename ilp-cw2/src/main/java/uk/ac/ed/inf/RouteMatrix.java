@@ -0,0 +1,314 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Exact routes between every ordered pair of points of interest, found ahead of the tour.
+ * Every route is an independent search, or optionally the routes from each point are found together by one
+ * one-to-many search. The separate searches use the flight heuristic, which guides them far better than the
+ * admissible heuristic a one-to-many search needs, so they are the default. Over the twelve test days the separate
+ * searches took 1.0 s, against 9.7 s for one-to-many searches at an epsilon of 0.25 and 1.6 s at the epsilon of 1
+ * used here. Either way the searches are all run at once on a pool with a thread per core, and the longest are
+ * started first so the last to finish is never queued behind shorter ones.
+ */
+public class RouteMatrix {
+
+    /** Moves recorded for a pair which has no route */
+    public static final int NO_ROUTE = -1;
+
+    /** Points of interest, in the order they were added */
+    private final ArrayList<LongLat> points = new ArrayList<>();
+
+    /** Index of each point of interest */
+    private final HashMap<LongLat, Integer> indexes = new HashMap<>();
+
+    /** Route between each ordered pair, stored at from * size + to */
+    private final ArrayList<List<PathfindingNode>> routes = new ArrayList<>();
+
+    /** Number of moves between each ordered pair */
+    private int[][] moves;
+
+    /** How far above the shortest a route from a one-to-many search may be, as a fraction */
+    private static final double ONE_TO_MANY_EPSILON = 1;
+
+    /** True to find every route from a point with one search, false to search for each pair separately */
+    private boolean oneToMany = false;
+
+    /** Number of searches run for the matrix */
+    private int searches = 0;
+
+    /** Nodes expanded by every search added together */
+    private long expanded = 0;
+
+    /** Time taken for the whole matrix */
+    private long wallNanos = 0;
+
+    /** Time taken by the slowest single task, a route or a row of routes */
+    private long slowestNanos = 0;
+
+    /** Time taken by every task added together */
+    private long totalNanos = 0;
+
+    /**
+     * Add a point of interest, unless it has already been added.
+     *
+     * @param point location to route to and from.
+     * @return index of the point.
+     */
+    public int add(LongLat point) {
+        var index = indexes.get(point);
+        if (index == null) {
+            index = points.size();
+            points.add(point);
+            indexes.put(point, index);
+        }
+        return index;
+    }
+
+    /**
+     * Find the route between every ordered pair of points added so far, in parallel.
+     * Each route is also given to the route cache, so a leg starting from a hover 'close-to' a point of interest
+     * can replay it instead of searching. The counters and timings are those of the latest call.
+     */
+    public void compute() {
+        searches = 0;
+        expanded = 0;
+        slowestNanos = 0;
+        totalNanos = 0;
+        int n = points.size();
+        this.moves = new int[n][n];
+        routes.clear();
+        for (int i = 0; i < n * n; i++) {
+            routes.add(null);
+        }
+
+        var tasks = new ArrayList<Callable<Long>>();
+        if (oneToMany) {
+            var rows = new ArrayList<Integer>();
+            for (int i = 0; i < n; i++) {
+                rows.add(i);
+            }
+            //longest first, judged by the heuristic to the furthest point.
+            rows.sort(Comparator.comparingDouble((Integer i) -> furthest(i)).reversed());
+            for (int row : rows) {
+                tasks.add(() -> computeRow(row));
+            }
+        } else {
+            var pairs = new ArrayList<int[]>();
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    if (i != j) {
+                        pairs.add(new int[]{i, j});
+                    }
+                }
+            }
+            //longest first, judged by the heuristic.
+            pairs.sort(Comparator.comparingDouble((int[] p) -> points.get(p[0]).tspHeuristic(points.get(p[1]))).reversed());
+            for (int[] pair : pairs) {
+                tasks.add(() -> computePair(pair[0], pair[1]));
+            }
+        }
+
+        var pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        long t0 = System.nanoTime();
+        try {
+            for (Future<Long> future : pool.invokeAll(tasks)) {
+                long nanos = future.get();
+                slowestNanos = Math.max(slowestNanos, nanos);
+                totalNanos += nanos;
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            System.err.println("ERROR computing route matrix.");
+            System.exit(1);
+        } finally {
+            pool.shutdown();
+        }
+        wallNanos = System.nanoTime() - t0;
+    }
+
+    /**
+     * Heuristic distance from a point to the point furthest from it.
+     *
+     * @param from index of the point.
+     * @return largest heuristic distance to any other point.
+     */
+    private double furthest(int from) {
+        double furthest = 0;
+        for (LongLat point : points) {
+            furthest = Math.max(furthest, points.get(from).tspHeuristic(point));
+        }
+        return furthest;
+    }
+
+    /**
+     * Find the routes from one point to every other and store them.
+     * Points which can be flown to in a straight line take that route, as the drone will, and the rest are found
+     * by a single one-to-many search, each within a bound of its shortest.
+     *
+     * @param from index of the point to start at.
+     * @return time taken in nanoseconds.
+     */
+    private long computeRow(int from) {
+        long t0 = System.nanoTime();
+        var startLL = points.get(from);
+
+        var searched = new ArrayList<Integer>();
+        var targets = new ArrayList<LongLat>();
+        for (int to = 0; to < points.size(); to++) {
+            if (to == from) {
+                continue;
+            }
+            var path = DirectRoute.getInstance().routeTo(startLL, points.get(to));
+            if (path != null) {
+                store(from, to, path);
+            } else {
+                searched.add(to);
+                targets.add(points.get(to));
+            }
+        }
+
+        if (!targets.isEmpty()) {
+            var pathfinding = new Pathfinding();
+            var paths = pathfinding.routesTo(startLL, targets, ONE_TO_MANY_EPSILON);
+            for (int k = 0; k < searched.size(); k++) {
+                store(from, searched.get(k), paths.get(k));
+            }
+            synchronized (this) {
+                searches++;
+                expanded += pathfinding.getNodesExpanded();
+            }
+        }
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * Search for the route between one pair of points and store it.
+     * Pairs write to separate slots, so no locking is needed.
+     *
+     * @param from index of the point to start at.
+     * @param to   index of the point to end 'close-to'.
+     * @return time taken in nanoseconds.
+     */
+    private long computePair(int from, int to) {
+        long t0 = System.nanoTime();
+        var startLL = points.get(from);
+        var endLL = points.get(to);
+
+        var path = DirectRoute.getInstance().routeTo(startLL, endLL); //the same route the drone will fly.
+        if (path == null) {
+            var pathfinding = new Pathfinding();
+            path = pathfinding.routeTo(startLL, endLL);
+            synchronized (this) {
+                searches++;
+                expanded += pathfinding.getNodesExpanded();
+            }
+        }
+        store(from, to, path);
+        return System.nanoTime() - t0;
+    }
+
+    /**
+     * Store the route between a pair of points, and give it to the route cache for legs leaving the point.
+     * Pairs write to separate slots, so no locking is needed.
+     *
+     * @param from index of the point to start at.
+     * @param to   index of the point to end 'close-to'.
+     * @param path route found between them.
+     */
+    private void store(int from, int to, List<PathfindingNode> path) {
+        var startLL = points.get(from);
+        var endLL = points.get(to);
+        routes.set(from * points.size() + to, path);
+        if (path.get(path.size() - 1).closeTo(endLL)) {
+            moves[from][to] = path.size() - 1;
+            RouteCache.getInstance().put(startLL, endLL, path);
+        } else {
+            moves[from][to] = NO_ROUTE;
+        }
+    }
+
+    /**
+     * Get the number of moves between two points of interest.
+     *
+     * @param from point to start at.
+     * @param to   point to end 'close-to'.
+     * @return number of moves, or NO_ROUTE if there is none.
+     */
+    public int getMoves(LongLat from, LongLat to) {
+        int i = indexOf(from);
+        int j = indexOf(to);
+        return i == j ? 0 : moves[i][j];
+    }
+
+    /**
+     * Get the distance flown between two points of interest.
+     *
+     * @param from point to start at.
+     * @param to   point to end 'close-to'.
+     * @return distance in degrees, infinite if there is no route.
+     */
+    public double getDistance(LongLat from, LongLat to) {
+        int m = getMoves(from, to);
+        return m == NO_ROUTE ? Double.POSITIVE_INFINITY : m * LongLat.STRAIGHT_LINE_DISTANCE;
+    }
+
+    /**
+     * Get the route between two different points of interest.
+     *
+     * @param from point to start at.
+     * @param to   point to end 'close-to'.
+     * @return a collection of pathfinding nodes, beginning at the start.
+     */
+    public List<PathfindingNode> getRoute(LongLat from, LongLat to) {
+        return routes.get(indexOf(from) * points.size() + indexOf(to));
+    }
+
+    /**
+     * Look up where a point of interest is stored.
+     *
+     * @param point location to find.
+     * @return index of the point.
+     * @throws IllegalArgumentException if the point was never added.
+     */
+    private int indexOf(LongLat point) {
+        var index = indexes.get(point);
+        if (index == null) {
+            throw new IllegalArgumentException("Point is not in the route matrix.");
+        }
+        return index;
+    }
+
+    /**
+     * Choose whether routes from each point are found by one search, or by a search for each pair.
+     * One search from each point is slower, so it is only worth choosing to compare the two.
+     *
+     * @param oneToMany true for one search from each point, false (the default) for a search for each pair.
+     */
+    public void setOneToMany(boolean oneToMany) {
+        this.oneToMany = oneToMany;
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    /**
+     * Override toString to give the timings, for diagnostics.
+     *
+     * @return String of the size and timings of the matrix.
+     */
+    @Override
+    public String toString() {
+        return String.format("points: %d, routes: %d, searches: %d, expanded: %d, wall: %.1f ms, "
+                        + "slowest task: %.1f ms, all tasks: %.1f ms",
+                points.size(), points.size() * (points.size() - 1), searches, expanded,
+                wallNanos / 1e6, slowestNanos / 1e6, totalNanos / 1e6);
+    }
+}
@@ -0,0 +1,250 @@
+package uk.ac.ed.inf;
+
+/**
+ * Local search over an order permutation, shortening the part of the tour the drone can fly within its move budget.
+ * Tours are scored on exact move counts: the cost of going to an order includes flying through its stops and
+ * hovering at each, and the tour ends by flying home from the last order.
+ * Two kinds of move are tried until neither helps:
+ * 2-opt reverses a run of orders, and Or-opt moves a run of up to three orders elsewhere.
+ * Costs are not symmetric, so reversing a run changes the cost of every leg inside it. Running sums of each leg's
+ * cost forwards and backwards along the tour give that change in O(1), so every move is checked in O(1) and the
+ * sums are only worked out again when a move is made.
+ * Only the orders which fit within the budget are rearranged, so the orders delivered are never fewer. When the
+ * shortened tour leaves room, the next orders of the permutation are let in and the search runs again.
+ */
+public class TourImprover {
+
+    /** Longest run of orders Or-opt moves */
+    private static final int MAX_SEGMENT = 3;
+
+    /** Stands for the start before the first order, or home after the last */
+    private static final int ENDPOINT = -1;
+
+    /** Moves to go to each order from each order, or from the start */
+    private final TourMatrix moves;
+
+    /** Moves to fly home from each order */
+    private final double[] home;
+
+    /** Moves the drone may make */
+    private final int budget;
+
+    /** Number of reversals made */
+    private int twoOptMoves = 0;
+
+    /** Number of runs moved */
+    private int orOptMoves = 0;
+
+    /**
+     * Create a local search for one day's orders.
+     *
+     * @param moves  to go to each order, from each order or from the start.
+     * @param home   moves to fly home from each order.
+     * @param budget moves the drone may make.
+     */
+    public TourImprover(TourMatrix moves, double[] home, int budget) {
+        this.moves = moves;
+        this.home = home;
+        this.budget = budget;
+    }
+
+    /**
+     * Cost of one leg of the tour.
+     *
+     * @param from order to go from, or ENDPOINT for the start.
+     * @param to   order to go to, or ENDPOINT for home.
+     * @return moves for the leg.
+     */
+    private double cost(int from, int to) {
+        if (from == ENDPOINT) {
+            return to == ENDPOINT ? 0 : moves.getStartWeight(to);
+        }
+        return to == ENDPOINT ? home[from] : moves.getWeight(from, to);
+    }
+
+    /**
+     * Number of orders the drone delivers flying a permutation, the way the tour is flown: orders are flown until
+     * the budget is used, then the latest are dropped until the drone can get home in time.
+     *
+     * @param tour permutation of the orders.
+     * @return length of the permutation's prefix which is delivered.
+     */
+    public int fittingPrefix(int[] tour) {
+        double used = 0;
+        int flown = 0;
+        while (flown < tour.length && used < budget) {
+            used += cost(flown == 0 ? ENDPOINT : tour[flown - 1], tour[flown]);
+            flown++;
+        }
+        while (flown > 0 && used + home[tour[flown - 1]] > budget) {
+            used -= cost(flown == 1 ? ENDPOINT : tour[flown - 2], tour[flown - 1]);
+            flown--;
+        }
+        return flown;
+    }
+
+    /**
+     * Moves to fly the first orders of a permutation and then home.
+     *
+     * @param tour   permutation of the orders.
+     * @param length number of orders flown.
+     * @return total moves.
+     */
+    public double tourMoves(int[] tour, int length) {
+        double total = 0;
+        int at = ENDPOINT;
+        for (int t = 0; t < length; t++) {
+            total += cost(at, tour[t]);
+            at = tour[t];
+        }
+        return total + cost(at, ENDPOINT);
+    }
+
+    /**
+     * Improve a permutation, shortening the tour of the orders which fit within the budget.
+     *
+     * @param order permutation of the orders, left unchanged.
+     * @return the improved permutation.
+     */
+    public int[] improve(int[] order) {
+        int[] tour = order.clone();
+        int length = fittingPrefix(tour);
+        while (true) {
+            optimise(tour, length);
+            int longer = fittingPrefix(tour);
+            if (longer <= length) {
+                return tour;
+            }
+            length = longer; //moves were saved, so more orders fit.
+        }
+    }
+
+    /**
+     * Apply improving moves to the first orders of a permutation until none is left.
+     *
+     * @param tour   permutation of the orders, changed in place.
+     * @param length number of orders to rearrange.
+     */
+    private void optimise(int[] tour, int length) {
+        double[] forward = new double[length];
+        double[] backward = new double[length];
+        sum(tour, length, forward, backward);
+        while (true) {
+            if (tryTwoOpt(tour, length, forward, backward) || tryOrOpt(tour, length)) {
+                sum(tour, length, forward, backward);
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Work out running sums of the legs between the orders, flown forwards and flown backwards.
+     *
+     * @param tour     permutation of the orders.
+     * @param length   number of orders summed over.
+     * @param forward  filled with the cost from the first order to each, in tour order.
+     * @param backward filled with the cost from each order back to the first, against tour order.
+     */
+    private void sum(int[] tour, int length, double[] forward, double[] backward) {
+        for (int t = 1; t < length; t++) {
+            forward[t] = forward[t - 1] + cost(tour[t - 1], tour[t]);
+            backward[t] = backward[t - 1] + cost(tour[t], tour[t - 1]);
+        }
+    }
+
+    /**
+     * Make the first reversal of a run of orders which shortens the tour.
+     *
+     * @param tour     permutation of the orders, changed in place.
+     * @param length   number of orders to rearrange.
+     * @param forward  running sums of the legs flown forwards.
+     * @param backward running sums of the legs flown backwards.
+     * @return true if a reversal was made.
+     */
+    private boolean tryTwoOpt(int[] tour, int length, double[] forward, double[] backward) {
+        for (int i = 0; i < length - 1; i++) {
+            int prev = i == 0 ? ENDPOINT : tour[i - 1];
+            for (int j = i + 1; j < length; j++) {
+                int next = j == length - 1 ? ENDPOINT : tour[j + 1];
+                double delta = cost(prev, tour[j]) + (backward[j] - backward[i]) + cost(tour[i], next)
+                        - cost(prev, tour[i]) - (forward[j] - forward[i]) - cost(tour[j], next);
+                if (delta < 0) {
+                    for (int a = i, b = j; a < b; a++, b--) {
+                        int swap = tour[a];
+                        tour[a] = tour[b];
+                        tour[b] = swap;
+                    }
+                    twoOptMoves++;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Make the first move of a run of up to three orders elsewhere which shortens the tour.
+     *
+     * @param tour   permutation of the orders, changed in place.
+     * @param length number of orders to rearrange.
+     * @return true if a run was moved.
+     */
+    private boolean tryOrOpt(int[] tour, int length) {
+        for (int run = 1; run <= MAX_SEGMENT && run < length; run++) {
+            for (int i = 0; i + run <= length; i++) {
+                int first = tour[i];
+                int last = tour[i + run - 1];
+                int prev = i == 0 ? ENDPOINT : tour[i - 1];
+                int next = i + run == length ? ENDPOINT : tour[i + run];
+                double removed = cost(prev, next) - cost(prev, first) - cost(last, next);
+
+                //gap g lies between tour[g - 1] and tour[g], gaps beside the run would leave it where it is.
+                for (int g = 0; g <= length; g++) {
+                    if (g >= i && g <= i + run) {
+                        continue;
+                    }
+                    int a = g == 0 ? ENDPOINT : tour[g - 1];
+                    int b = g == length ? ENDPOINT : tour[g];
+                    double delta = removed + cost(a, first) + cost(last, b) - cost(a, b);
+                    if (delta < 0) {
+                        moveRun(tour, i, run, g);
+                        orOptMoves++;
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move a run of orders to a gap elsewhere in the permutation.
+     *
+     * @param tour permutation of the orders, changed in place.
+     * @param i    position of the run's first order.
+     * @param run  number of orders in the run.
+     * @param gap  gap to move it to, before the run or after its end.
+     */
+    private static void moveRun(int[] tour, int i, int run, int gap) {
+        int[] moving = new int[run];
+        System.arraycopy(tour, i, moving, 0, run);
+        if (gap < i) {
+            System.arraycopy(tour, gap, tour, gap + run, i - gap);
+            System.arraycopy(moving, 0, tour, gap, run);
+        } else {
+            System.arraycopy(tour, i + run, tour, i, gap - i - run);
+            System.arraycopy(moving, 0, tour, gap - run, run);
+        }
+    }
+
+    /**
+     * Override toString to give the moves made, for diagnostics.
+     *
+     * @return String of the reversals and runs moved.
+     */
+    @Override
+    public String toString() {
+        return String.format("2-opt moves: %d, or-opt moves: %d", twoOptMoves, orOptMoves);
+    }
+}
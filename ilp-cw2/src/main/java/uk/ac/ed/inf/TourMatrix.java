@@ -0,0 +1,98 @@
+package uk.ac.ed.inf;
+
+/**
+ * Dense matrix of the weights of going from one stop of a tour to another, for building tours without graph objects.
+ * Stops are numbered from 0, and the tour's start is an extra row of weights which no stop leads back to.
+ * A greedy tour repeatedly goes to the unvisited stop with the lowest weight, keeping the unvisited stops in a
+ * bitset, so it takes time proportional to the square of the number of stops and allocates only its result.
+ */
+public class TourMatrix {
+
+    /** Number of stops the tour can visit */
+    private final int stops;
+
+    /** Weight from each stop to each stop, row after row, with the start's weights in the last row */
+    private final double[] weights;
+
+    /**
+     * Create a matrix with every weight zero.
+     *
+     * @param stops number of stops the tour can visit.
+     * @throws IllegalArgumentException if stops is negative.
+     */
+    public TourMatrix(int stops) {
+        if (stops < 0) {
+            throw new IllegalArgumentException("Number of stops must not be negative.");
+        }
+        this.stops = stops;
+        this.weights = new double[(stops + 1) * stops];
+    }
+
+    /**
+     * Set the weight of going from one stop to another.
+     *
+     * @param from   index of the stop to go from.
+     * @param to     index of the stop to go to.
+     * @param weight of going between them, lower is better.
+     */
+    public void setWeight(int from, int to, double weight) {
+        weights[from * stops + to] = weight;
+    }
+
+    /**
+     * Set the weight of going from the start to a stop.
+     *
+     * @param to     index of the stop to go to.
+     * @param weight of going to it first, lower is better.
+     */
+    public void setStartWeight(int to, double weight) {
+        weights[stops * stops + to] = weight;
+    }
+
+    public double getWeight(int from, int to) {
+        return weights[from * stops + to];
+    }
+
+    public double getStartWeight(int to) {
+        return weights[stops * stops + to];
+    }
+
+    public int getStops() {
+        return stops;
+    }
+
+    /**
+     * Build a tour greedily from the start, always going to the unvisited stop with the lowest weight.
+     * Ties go to the lowest index.
+     *
+     * @return index of every stop in the order visited.
+     */
+    public int[] greedyOrder() {
+        int[] order = new int[stops];
+        long[] unvisited = new long[(stops + 63) / 64];
+        for (int i = 0; i < stops; i++) {
+            unvisited[i >> 6] |= 1L << i;
+        }
+
+        int row = stops; //the start's row.
+        for (int step = 0; step < stops; step++) {
+            int base = row * stops;
+            int best = -1;
+            double bestWeight = 0;
+            for (int w = 0; w < unvisited.length; w++) {
+                for (long bits = unvisited[w]; bits != 0; bits &= bits - 1) {
+                    int to = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    double weight = weights[base + to];
+                    if (best < 0 || Double.compare(weight, bestWeight) < 0) {
+                        best = to;
+                        bestWeight = weight;
+                    }
+                }
+            }
+            unvisited[best >> 6] &= ~(1L << best);
+            order[step] = best;
+            row = best;
+        }
+        return order;
+    }
+}
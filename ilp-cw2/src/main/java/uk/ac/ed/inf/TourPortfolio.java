@@ -0,0 +1,443 @@
+package uk.ac.ed.inf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several strategies for planning the day's tour, run at once on threads of their own until a deadline.
+ * Each strategy plans the sequence of orders to deliver from the exact move counts between orders. Plans are checked
+ * again here, and the one collecting the most pence within the moves allowed wins, ties going to the fewest moves and
+ * then to the strategy added first. Strategies are asked to return a little before the deadline, and one still running
+ * at the deadline is cancelled by interrupting it, losing any plan it had not returned. Strategies only read the
+ * matrices, so they share nothing that changes.
+ */
+public class TourPortfolio {
+
+    /** Seed for the random starts of local search, so that every run tries the same starts in the same order */
+    private static final long SEED = 2021;
+
+    /** Stands for the start before the first order, or home after the last */
+    private static final int ENDPOINT = -1;
+
+    /** Fraction of the time allowed which strategies are asked to return within, so they are not cut off mid-plan */
+    private static final double RETURN_FRACTION = 0.9;
+
+    /**
+     * A way of planning the tour.
+     */
+    public interface Strategy {
+        /**
+         * Plan the orders to deliver.
+         *
+         * @param deadline value of System.nanoTime() by which to return, giving up the thread if interrupted.
+         * @return indexes of the orders delivered, in the order to fly them.
+         */
+        int[] plan(long deadline);
+    }
+
+    /**
+     * A strategy in the portfolio and how it did.
+     */
+    private static class Entry {
+        /** Name the strategy is reported under */
+        private final String name;
+
+        /** The strategy */
+        private final Strategy strategy;
+
+        /** How the strategy's run ended */
+        private String status = "not run";
+
+        /** Plan returned, or null if none was */
+        private int[] plan;
+
+        /** Pence the plan collects */
+        private long value;
+
+        /** Moves the plan takes, including flying home */
+        private double moves;
+
+        /** Time the strategy took in nanoseconds, written by the strategy's own thread */
+        private volatile long nanos;
+
+        private Entry(String name, Strategy strategy) {
+            this.name = name;
+            this.strategy = strategy;
+        }
+
+        /**
+         * Forget how the strategy did last time, before it is run again.
+         */
+        private void reset() {
+            status = "not run";
+            plan = null;
+            value = 0;
+            moves = 0;
+            nanos = 0;
+        }
+    }
+
+    /** Moves to go to each order from each order, or from the start */
+    private final TourMatrix moves;
+
+    /** Moves to fly home from each order */
+    private final double[] home;
+
+    /** Value of each order in pence */
+    private final int[] values;
+
+    /** Moves the drone may make */
+    private final int budget;
+
+    /** Strategies, in the order they were added */
+    private final ArrayList<Entry> entries = new ArrayList<>();
+
+    /** Strategy whose plan won, or null before running or if no plan passed */
+    private Entry winner;
+
+    /**
+     * Create an empty portfolio for one day's orders.
+     *
+     * @param moves  to go to each order, from each order or from the start.
+     * @param home   moves to fly home from each order.
+     * @param values of each order in pence.
+     * @param budget moves the drone may make.
+     */
+    public TourPortfolio(TourMatrix moves, double[] home, int[] values, int budget) {
+        this.moves = moves;
+        this.home = home;
+        this.values = values;
+        this.budget = budget;
+    }
+
+    /**
+     * Add a strategy to the portfolio.
+     *
+     * @param name     to report the strategy under.
+     * @param strategy to run.
+     */
+    public void add(String name, Strategy strategy) {
+        entries.add(new Entry(name, strategy));
+    }
+
+    /**
+     * Add the standard strategies: greedy tours from several edge weights, nearest neighbour, best-ratio insertion,
+     * local search from random starts, and annealing for the orders to deliver.
+     * Each strategy needing a TourImprover is given its own, as an improver counts its moves and so is not shared
+     * between threads.
+     *
+     * @param weights the edge weights the tour has always been built from, greedily.
+     */
+    public void addStandard(TourMatrix weights) {
+        var distance = newImprover();
+        add("greedy distance/value", deadline -> fittingPrefix(distance, weights.greedyOrder()));
+        var movesPerValue = newImprover();
+        add("greedy moves/value", deadline -> fittingPrefix(movesPerValue, weighted(1).greedyOrder()));
+        var movesPerValueSquared = newImprover();
+        add("greedy moves/value^2", deadline -> fittingPrefix(movesPerValueSquared, weighted(2).greedyOrder()));
+        var nearest = newImprover();
+        add("nearest neighbour", deadline -> fittingPrefix(nearest, weighted(0).greedyOrder()));
+        add("insertion", deadline -> insertion());
+        var local = newImprover();
+        add("local search", deadline -> localSearch(local, weights.greedyOrder(), deadline));
+        var annealing = newImprover();
+        add("annealing", deadline -> {
+            int[] start = annealing.improve(weights.greedyOrder());
+            var solver = new OrienteeringSolver(moves, home, values, budget);
+            return solver.solve(fittingPrefix(annealing, start), Math.max(0, deadline - System.nanoTime()));
+        });
+    }
+
+    /**
+     * Create a local search over this portfolio's orders, for one strategy.
+     *
+     * @return the improver.
+     */
+    private TourImprover newImprover() {
+        return new TourImprover(moves, home, budget);
+    }
+
+    /**
+     * Run every strategy at once until they finish or the deadline passes, then pick the winning plan.
+     * How the strategies did on any earlier run is forgotten first.
+     *
+     * @param budgetNanos time allowed in nanoseconds.
+     * @return the winning plan, or an empty plan if no strategy returned one which fits.
+     */
+    public int[] run(long budgetNanos) {
+        winner = null;
+        for (Entry entry : entries) {
+            entry.reset();
+        }
+        long deadline = System.nanoTime() + (long) (budgetNanos * RETURN_FRACTION);
+        var tasks = new ArrayList<Callable<int[]>>();
+        for (Entry entry : entries) {
+            tasks.add(() -> {
+                long t0 = System.nanoTime();
+                try {
+                    return entry.strategy.plan(deadline);
+                } finally {
+                    entry.nanos = System.nanoTime() - t0;
+                }
+            });
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, entries.size()));
+        try {
+            List<Future<int[]>> futures = pool.invokeAll(tasks, budgetNanos, TimeUnit.NANOSECONDS);
+            for (int i = 0; i < entries.size(); i++) {
+                record(entries.get(i), futures.get(i));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (Entry entry : entries) {
+            if (entry.plan != null && (winner == null || entry.value > winner.value
+                    || (entry.value == winner.value && entry.moves < winner.moves))) {
+                winner = entry;
+            }
+        }
+        return winner == null ? new int[0] : winner.plan.clone();
+    }
+
+    /**
+     * Record how a strategy's run ended, keeping its plan only if it passes the checks.
+     *
+     * @param entry  strategy that was run.
+     * @param future of its run.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    private void record(Entry entry, Future<int[]> future) throws InterruptedException {
+        int[] plan;
+        try {
+            plan = future.get();
+        } catch (CancellationException e) {
+            entry.status = "cancelled";
+            return;
+        } catch (ExecutionException e) {
+            entry.status = "failed: " + e.getCause();
+            return;
+        }
+        if (!isPlan(plan)) {
+            entry.status = "rejected, not a plan";
+            return;
+        }
+        entry.moves = planMoves(plan);
+        if (entry.moves > budget) {
+            entry.status = String.format("rejected, %.0f moves", entry.moves);
+            return;
+        }
+        entry.status = "done";
+        entry.plan = plan;
+        for (int order : plan) {
+            entry.value += values[order];
+        }
+    }
+
+    /**
+     * Check a plan names each order at most once.
+     *
+     * @param plan indexes of the orders delivered.
+     * @return true if it does.
+     */
+    private boolean isPlan(int[] plan) {
+        if (plan == null) {
+            return false;
+        }
+        boolean[] seen = new boolean[values.length];
+        for (int order : plan) {
+            if (order < 0 || order >= values.length || seen[order]) {
+                return false;
+            }
+            seen[order] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Cost of one leg of the tour.
+     *
+     * @param from order to go from, or ENDPOINT for the start.
+     * @param to   order to go to, or ENDPOINT for home.
+     * @return moves for the leg.
+     */
+    private double cost(int from, int to) {
+        if (from == ENDPOINT) {
+            return to == ENDPOINT ? 0 : moves.getStartWeight(to);
+        }
+        return to == ENDPOINT ? home[from] : moves.getWeight(from, to);
+    }
+
+    /**
+     * Moves to fly a plan and then home.
+     *
+     * @param plan indexes of the orders delivered, in the order to fly them.
+     * @return total moves.
+     */
+    private double planMoves(int[] plan) {
+        double total = 0;
+        int at = ENDPOINT;
+        for (int order : plan) {
+            total += cost(at, order);
+            at = order;
+        }
+        return total + cost(at, ENDPOINT);
+    }
+
+    /**
+     * The orders of a permutation which the drone delivers flying it, the way the tour is flown.
+     *
+     * @param improver of the strategy asking.
+     * @param tour     permutation of the orders.
+     * @return the permutation's prefix which is delivered.
+     */
+    private static int[] fittingPrefix(TourImprover improver, int[] tour) {
+        int length = improver.fittingPrefix(tour);
+        int[] prefix = new int[length];
+        System.arraycopy(tour, 0, prefix, 0, length);
+        return prefix;
+    }
+
+    /**
+     * Edge weights of moves divided by a power of the value of the order gone to.
+     *
+     * @param power of the value, 0 for moves alone.
+     * @return the weights.
+     */
+    private TourMatrix weighted(double power) {
+        int stops = values.length;
+        var matrix = new TourMatrix(stops);
+        for (int y = 0; y < stops; y++) {
+            double scale = Math.pow(Math.max(values[y], 1), power);
+            for (int x = 0; x < stops; x++) {
+                if (x != y) {
+                    matrix.setWeight(x, y, moves.getWeight(x, y) / scale);
+                }
+            }
+            matrix.setStartWeight(y, moves.getStartWeight(y) / scale);
+        }
+        return matrix;
+    }
+
+    /**
+     * Build a plan by insertion: repeatedly insert the order collecting the most pence per move added, where it adds
+     * the fewest moves, until no order fits.
+     *
+     * @return the plan.
+     */
+    private int[] insertion() {
+        int[] route = new int[values.length];
+        boolean[] inRoute = new boolean[values.length];
+        int length = 0;
+        double used = 0;
+        while (true) {
+            int bestOrder = -1;
+            int bestGap = -1;
+            double bestDelta = 0;
+            double bestRatio = 0;
+            for (int x = 0; x < values.length; x++) {
+                if (inRoute[x]) {
+                    continue;
+                }
+                for (int gap = 0; gap <= length; gap++) {
+                    int a = gap == 0 ? ENDPOINT : route[gap - 1];
+                    int b = gap == length ? ENDPOINT : route[gap];
+                    double delta = cost(a, x) + cost(x, b) - cost(a, b);
+                    double ratio = values[x] / Math.max(delta, 1);
+                    if (used + delta <= budget && (bestOrder < 0 || ratio > bestRatio)) {
+                        bestOrder = x;
+                        bestGap = gap;
+                        bestDelta = delta;
+                        bestRatio = ratio;
+                    }
+                }
+            }
+            if (bestOrder < 0) {
+                int[] plan = new int[length];
+                System.arraycopy(route, 0, plan, 0, length);
+                return plan;
+            }
+            System.arraycopy(route, bestGap, route, bestGap + 1, length - bestGap);
+            route[bestGap] = bestOrder;
+            inRoute[bestOrder] = true;
+            length++;
+            used += bestDelta;
+        }
+    }
+
+    /**
+     * Improve the greedy permutation with local search, then keep improving random permutations until the deadline,
+     * keeping the plan collecting the most pence.
+     *
+     * @param improver of the strategy, used for every start.
+     * @param greedy   permutation to start from.
+     * @param deadline value of System.nanoTime() by which to return.
+     * @return the best plan found.
+     */
+    private int[] localSearch(TourImprover improver, int[] greedy, long deadline) {
+        var random = new SplittableRandom(SEED);
+        int[] best = null;
+        long bestValue = -1;
+        double bestMoves = 0;
+        int[] tour = greedy;
+        while (true) {
+            int[] plan = fittingPrefix(improver, improver.improve(tour));
+            long value = 0;
+            for (int order : plan) {
+                value += values[order];
+            }
+            double used = planMoves(plan);
+            if (value > bestValue || (value == bestValue && used < bestMoves)) {
+                best = plan;
+                bestValue = value;
+                bestMoves = used;
+            }
+            if (System.nanoTime() >= deadline || Thread.currentThread().isInterrupted()) {
+                return best;
+            }
+            tour = greedy.clone();
+            for (int i = tour.length - 1; i > 0; i--) { //a fresh random start each time.
+                int j = random.nextInt(i + 1);
+                int swap = tour[i];
+                tour[i] = tour[j];
+                tour[j] = swap;
+            }
+        }
+    }
+
+    /**
+     * Name of the strategy whose plan won.
+     *
+     * @return the name, or null before running or if no plan passed.
+     */
+    public String getWinner() {
+        return winner == null ? null : winner.name;
+    }
+
+    /**
+     * Override toString to give how every strategy did, for diagnostics.
+     *
+     * @return String of a line per strategy, with the winner marked.
+     */
+    @Override
+    public String toString() {
+        var report = new StringBuilder();
+        for (Entry entry : entries) {
+            report.append(String.format("%n  %s%-22s %-10s value: %6d, orders: %3d, moves: %5.0f, time: %.1f ms",
+                    entry == winner ? "* " : "  ", entry.name, entry.status, entry.value,
+                    entry.plan == null ? 0 : entry.plan.length, entry.moves, entry.nanos / 1e6));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,311 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import com.mapbox.geojson.Polygon;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Visibility graph over the corners of the no-fly zones and of the confinement area.
+ * The shortest flight around the buildings bends only at their corners, so its length is found by a small
+ * shortest path search over which corners can see each other, and never overestimates the real route.
+ * Which corners can be seen from each square of the confinement area is worked out when first asked for and
+ * shared by every later search.
+ * A graph is never changed once built, except for filling in those squares, so it can be shared between threads.
+ */
+public class VisibilityGraph {
+
+    /** Width and height of each square in degrees, the same squares as the clearance field */
+    private static final double CELL_SIZE = LongLat.STRAIGHT_LINE_DISTANCE / 4;
+
+    /** Longitude of each corner */
+    private final double[] vertexX;
+
+    /** Latitude of each corner */
+    private final double[] vertexY;
+
+    /** Longitude of the first end of each edge */
+    private final double[] edgeX1;
+
+    /** Latitude of the first end of each edge */
+    private final double[] edgeY1;
+
+    /** Longitude of the second end of each edge */
+    private final double[] edgeX2;
+
+    /** Latitude of the second end of each edge */
+    private final double[] edgeY2;
+
+    /** First edge of each polygon, with one extra entry marking the end of the last */
+    private final int[] polygonStart;
+
+    /** Bounding box of each polygon, four entries each as west, south, east, north */
+    private final double[] polygonBounds;
+
+    /** Length of the line between each pair of corners which can see each other, infinite otherwise */
+    private final double[] weights;
+
+    /** Number of columns across the confinement area */
+    private final int cols;
+
+    /** Number of rows across the confinement area */
+    private final int rows;
+
+    /** Corners seen from the centre of each square as a bit set, null until first asked for */
+    private final AtomicReferenceArray<long[]> cellVisible;
+
+    /**
+     * Build the graph, testing every pair of corners.
+     *
+     * @param polygons no-fly zones to go around.
+     */
+    public VisibilityGraph(List<Polygon> polygons) {
+        int vertexCount = 4;
+        int edgeCount = 0;
+        for (var poly : polygons) {
+            vertexCount += poly.coordinates().get(0).size() - 1; //the ring repeats its first corner.
+            edgeCount += poly.coordinates().get(0).size() - 1;
+        }
+        this.vertexX = new double[vertexCount];
+        this.vertexY = new double[vertexCount];
+        int[] polygonOf = new int[vertexCount];
+        int[] cornerOf = new int[vertexCount];
+        this.edgeX1 = new double[edgeCount];
+        this.edgeY1 = new double[edgeCount];
+        this.edgeX2 = new double[edgeCount];
+        this.edgeY2 = new double[edgeCount];
+
+        this.polygonStart = new int[polygons.size() + 1];
+        this.polygonBounds = new double[polygons.size() * 4];
+        int v = 0;
+        int e = 0;
+        for (int p = 0; p < polygons.size(); p++) {
+            var ring = polygons.get(p).coordinates().get(0);
+            polygonStart[p] = e;
+            polygonBounds[p * 4] = polygonBounds[p * 4 + 1] = Double.POSITIVE_INFINITY;
+            polygonBounds[p * 4 + 2] = polygonBounds[p * 4 + 3] = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < ring.size() - 1; i++) {
+                polygonBounds[p * 4] = Math.min(polygonBounds[p * 4], ring.get(i).longitude());
+                polygonBounds[p * 4 + 1] = Math.min(polygonBounds[p * 4 + 1], ring.get(i).latitude());
+                polygonBounds[p * 4 + 2] = Math.max(polygonBounds[p * 4 + 2], ring.get(i).longitude());
+                polygonBounds[p * 4 + 3] = Math.max(polygonBounds[p * 4 + 3], ring.get(i).latitude());
+                vertexX[v] = ring.get(i).longitude();
+                vertexY[v] = ring.get(i).latitude();
+                cornerOf[v] = i;
+                polygonOf[v++] = p;
+                edgeX1[e] = ring.get(i).longitude();
+                edgeY1[e] = ring.get(i).latitude();
+                edgeX2[e] = ring.get(i + 1).longitude();
+                edgeY2[e++] = ring.get(i + 1).latitude();
+            }
+        }
+        polygonStart[polygons.size()] = e;
+        double[][] corners = {
+                {LongLat.CONFINEMENT_LONGITUDE_WEST, LongLat.CONFINEMENT_LATITUDE_SOUTH},
+                {LongLat.CONFINEMENT_LONGITUDE_EAST, LongLat.CONFINEMENT_LATITUDE_SOUTH},
+                {LongLat.CONFINEMENT_LONGITUDE_EAST, LongLat.CONFINEMENT_LATITUDE_NORTH},
+                {LongLat.CONFINEMENT_LONGITUDE_WEST, LongLat.CONFINEMENT_LATITUDE_NORTH}};
+        for (double[] corner : corners) {
+            vertexX[v] = corner[0];
+            vertexY[v] = corner[1];
+            polygonOf[v++] = -1;
+        }
+
+        this.weights = new double[vertexCount * vertexCount];
+        Arrays.fill(weights, Double.POSITIVE_INFINITY);
+        for (int a = 0; a < vertexCount; a++) {
+            weights[a * vertexCount + a] = 0;
+            for (int b = a + 1; b < vertexCount; b++) {
+                boolean visible = isVisible(vertexX[a], vertexY[a], vertexX[b], vertexY[b]);
+                if (visible && polygonOf[a] >= 0 && polygonOf[a] == polygonOf[b]) {
+                    //corners of the same zone can also be joined through its inside, which crosses no edge.
+                    //neighbouring corners are joined by an edge, which can be flown along.
+                    var ring = polygons.get(polygonOf[a]).coordinates().get(0);
+                    int gap = Math.abs(cornerOf[a] - cornerOf[b]);
+                    visible = gap == 1 || gap == ring.size() - 2
+                            || !isInside(ring, (vertexX[a] + vertexX[b]) / 2, (vertexY[a] + vertexY[b]) / 2);
+                }
+                if (visible) {
+                    double length = Math.hypot(vertexX[a] - vertexX[b], vertexY[a] - vertexY[b]);
+                    weights[a * vertexCount + b] = length;
+                    weights[b * vertexCount + a] = length;
+                }
+            }
+        }
+
+        this.cols = (int) Math.ceil((LongLat.CONFINEMENT_LONGITUDE_EAST - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        this.rows = (int) Math.ceil((LongLat.CONFINEMENT_LATITUDE_NORTH - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        this.cellVisible = new AtomicReferenceArray<>(cols * rows);
+    }
+
+    /**
+     * Check if a point is inside a ring, by counting the edges crossed to its east.
+     *
+     * @return true if (x, y) is inside the ring.
+     */
+    private static boolean isInside(List<Point> ring, double x, double y) {
+        boolean inside = false;
+        for (int i = 0; i < ring.size() - 1; i++) {
+            double x1 = ring.get(i).longitude(), y1 = ring.get(i).latitude();
+            double x2 = ring.get(i + 1).longitude(), y2 = ring.get(i + 1).latitude();
+            if ((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Check if a line crosses no edge of the no-fly zones.
+     * Lines which only touch an edge, such as at a corner they end on, are counted as visible. This may let a
+     * line through more than the drone could fly, which can only make the distances shorter.
+     * Polygons whose bounding box the line's bounding box misses are passed over.
+     *
+     * @return true if the line from (x1, y1) to (x2, y2) properly crosses no edge.
+     */
+    public boolean isVisible(double x1, double y1, double x2, double y2) {
+        double minX = Math.min(x1, x2), maxX = Math.max(x1, x2);
+        double minY = Math.min(y1, y2), maxY = Math.max(y1, y2);
+        for (int p = 0; p < polygonStart.length - 1; p++) {
+            if (maxX < polygonBounds[p * 4] || maxY < polygonBounds[p * 4 + 1] ||
+                    minX > polygonBounds[p * 4 + 2] || minY > polygonBounds[p * 4 + 3]) {
+                continue;
+            }
+            for (int i = polygonStart[p]; i < polygonStart[p + 1]; i++) {
+                if (side(x1, y1, x2, y2, edgeX1[i], edgeY1[i]) * side(x1, y1, x2, y2, edgeX2[i], edgeY2[i]) < 0
+                        && side(edgeX1[i], edgeY1[i], edgeX2[i], edgeY2[i], x1, y1)
+                        * side(edgeX1[i], edgeY1[i], edgeX2[i], edgeY2[i], x2, y2) < 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Which side of a line a point lies on.
+     *
+     * @return positive if (px, py) is counter-clockwise of the line, negative if clockwise, 0 if in line.
+     */
+    private static int side(double x1, double y1, double x2, double y2, double px, double py) {
+        return (int) Math.signum((x2 - x1) * (py - y1) - (y2 - y1) * (px - x1));
+    }
+
+    /**
+     * Shortest distance from every corner to a target, going around the no-fly zones.
+     *
+     * @param longitude of the target.
+     * @param latitude  of the target.
+     * @return distance in degrees from each corner, infinite if the target cannot be reached.
+     */
+    public double[] distancesTo(double longitude, double latitude) {
+        int n = vertexX.length;
+        double[] dist = new double[n];
+        boolean[] done = new boolean[n];
+        for (int v = 0; v < n; v++) {
+            dist[v] = isVisible(longitude, latitude, vertexX[v], vertexY[v])
+                    ? Math.hypot(longitude - vertexX[v], latitude - vertexY[v]) : Double.POSITIVE_INFINITY;
+        }
+        for (int k = 0; k < n; k++) { //dense Dijkstra, the graph has only a hundred or so corners.
+            int u = -1;
+            for (int v = 0; v < n; v++) {
+                if (!done[v] && (u < 0 || dist[v] < dist[u])) {
+                    u = v;
+                }
+            }
+            if (dist[u] == Double.POSITIVE_INFINITY) {
+                break;
+            }
+            done[u] = true;
+            for (int v = 0; v < n; v++) {
+                double through = dist[u] + weights[u * n + v];
+                if (through < dist[v]) {
+                    dist[v] = through;
+                }
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Square holding a point.
+     *
+     * @param longitude of the point.
+     * @param latitude  of the point.
+     * @return index of the square, or -1 if the point is outside the confinement area.
+     */
+    public int cellOf(double longitude, double latitude) {
+        int c = (int) Math.floor((longitude - LongLat.CONFINEMENT_LONGITUDE_WEST) / CELL_SIZE);
+        int r = (int) Math.floor((latitude - LongLat.CONFINEMENT_LATITUDE_SOUTH) / CELL_SIZE);
+        if (c < 0 || c >= cols || r < 0 || r >= rows) {
+            return -1;
+        }
+        return r * cols + c;
+    }
+
+    public double cellLongitude(int cell) {
+        return LongLat.CONFINEMENT_LONGITUDE_WEST + (cell % cols + 0.5) * CELL_SIZE;
+    }
+
+    public double cellLatitude(int cell) {
+        return LongLat.CONFINEMENT_LATITUDE_SOUTH + (cell / cols + 0.5) * CELL_SIZE;
+    }
+
+    /**
+     * Greatest distance from any point in a square to its centre.
+     *
+     * @return half the diagonal of a square, in degrees.
+     */
+    public static double cellRadius() {
+        return CELL_SIZE * Math.sqrt(2) / 2;
+    }
+
+    /**
+     * Shortest distance from the centre of a square to a target, going around the no-fly zones.
+     *
+     * @param cell          square to start from.
+     * @param longitude     of the target.
+     * @param latitude      of the target.
+     * @param fromCorners   distances from each corner to the target, from distancesTo.
+     * @param targetVisible true if the line from the centre to the target crosses no edge.
+     * @return distance in degrees, infinite if the target cannot be reached.
+     */
+    public double distanceFromCell(int cell, double longitude, double latitude, double[] fromCorners,
+                                   boolean targetVisible) {
+        double x = cellLongitude(cell);
+        double y = cellLatitude(cell);
+        if (targetVisible) {
+            return Math.hypot(longitude - x, latitude - y);
+        }
+
+        long[] visible = cellVisible.get(cell);
+        if (visible == null) { //threads racing here work out the same set, so either may win.
+            visible = new long[(vertexX.length + 63) / 64];
+            for (int v = 0; v < vertexX.length; v++) {
+                if (isVisible(x, y, vertexX[v], vertexY[v])) {
+                    visible[v >> 6] |= 1L << (v & 63);
+                }
+            }
+            cellVisible.set(cell, visible);
+        }
+
+        double best = Double.POSITIVE_INFINITY;
+        for (int w = 0; w < visible.length; w++) {
+            for (long bits = visible[w]; bits != 0; bits &= bits - 1) {
+                int v = (w << 6) + Long.numberOfTrailingZeros(bits);
+                best = Math.min(best, Math.hypot(vertexX[v] - x, vertexY[v] - y) + fromCorners[v]);
+            }
+        }
+        return best;
+    }
+
+    public int getCellCount() {
+        return cols * rows;
+    }
+
+    public int getVertexCount() {
+        return vertexX.length;
+    }
+}
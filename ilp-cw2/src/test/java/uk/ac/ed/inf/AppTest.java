@@ -1,9 +1,15 @@
 package uk.ac.ed.inf;
 
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Polygon;
 import org.junit.Test;
 
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
@@ -130,6 +136,305 @@ public class AppTest {
 //        assertTrue(approxEq(nextPosition, appletonTower));
 //    }
 //
+    @Test
+    public void testLatticeMoveOrder() {
+        var start = new PathfindingNode(appletonTower.getLongitude(), appletonTower.getLatitude());
+        var a = start.nextPosition(30).nextPosition(60);
+        var b = start.nextPosition(60).nextPosition(30);
+        assertEquals(a.getKey(), b.getKey());
+        assertEquals(a.getLongitude(), b.getLongitude(), 0);
+        assertEquals(a.getLatitude(), b.getLatitude(), 0);
+        //every heading, from on and off the lattice, within the 1E-12 tolerance DroneMove checks moves to.
+        for (LongLat from : new LongLat[]{appletonTower, businessSchool}) {
+            var node = new PathfindingNode(from.getLongitude(), from.getLatitude());
+            for (int angle = LongLat.MIN_ANGLE; angle <= LongLat.MAX_ANGLE; angle += LongLat.ANGLE_INTERVAL) {
+                var next = node.nextPosition(angle);
+                assertEquals(LongLat.STRAIGHT_LINE_DISTANCE, node.distanceTo(next), 1E-12);
+                assertEquals(LongLat.STRAIGHT_LINE_DISTANCE, next.distanceTo(next.nextPosition(angle)), 1E-12);
+            }
+        }
+        assertNotEquals(start.getKey(), start.nextPosition(0).getKey());
+
+        long x = PathfindingLattice.toX(appletonTower.getLongitude());
+        long y = PathfindingLattice.toY(appletonTower.getLatitude());
+        assertNotEquals(PathfindingLattice.key(x, y), PathfindingLattice.key(x + 1, y));
+        assertNotEquals(PathfindingLattice.key(x, y), PathfindingLattice.key(x, y + 1));
+        assertEquals(y, PathfindingLattice.toY(PathfindingLattice.toLatitude(y)));
+        assertEquals(y + 1, PathfindingLattice.toY(PathfindingLattice.toLatitude(y + 1)));
+    }
+
+    @Test
+    public void testDirectRouteMovesAreLegal() {
+        // The webserver must be running on port 9898 to run this test.
+        var path = DirectRoute.getInstance().routeTo(businessSchool, appletonTower);
+        assertNotNull(path);
+        assertEquals(businessSchool.getLongitude(), path.get(0).getLongitude(), 0);
+        assertEquals(businessSchool.getLatitude(), path.get(0).getLatitude(), 0);
+        for (int i = 1; i < path.size(); i++) {
+            assertEquals(LongLat.STRAIGHT_LINE_DISTANCE, path.get(i - 1).distanceTo(path.get(i)), 1E-12);
+        }
+        assertTrue(path.get(path.size() - 1).closeTo(appletonTower));
+    }
+
+    @Test
+    public void testWorkspaceSlotsNearbyPositions() {
+        var workspace = PathfindingWorkspace.get();
+        long x = PathfindingLattice.toX(appletonTower.getLongitude());
+        long y = PathfindingLattice.toY(appletonTower.getLatitude());
+        workspace.ensureCapacity(3);
+        int slot = workspace.slotOf(x, y);
+        int east = workspace.slotOf(x + 1, y);
+        int north = workspace.slotOf(x, y + 1);
+        assertNotEquals(slot, east);
+        assertNotEquals(slot, north);
+        assertNotEquals(east, north);
+        assertEquals(slot, workspace.slotOf(x, y));
+        assertEquals(3, workspace.size());
+        assertEquals(x + 1, workspace.getX(east));
+        assertEquals(y + 1, workspace.getY(north));
+    }
+
+    @Test
+    public void testRouteCacheHitAndEviction() {
+        // The webserver must be running on port 9898 to run this test.
+        var cache = RouteCache.getInstance();
+        cache.clear();
+        var start = new PathfindingNode(appletonTower.getLongitude(), appletonTower.getLatitude());
+        var next = start.nextPosition(0);
+        next.setAngle(0);
+        var path = List.of(start, next);
+        var ends = new ArrayList<LongLat>();
+        for (int i = 0; i <= RouteCache.CAPACITY; i++) { //ends one lattice unit apart, each its own key.
+            ends.add(new LongLat(next.getLongitude() + i * PathfindingLattice.UNIT, next.getLatitude()));
+        }
+
+        cache.put(appletonTower, ends.get(0), path);
+        cache.put(appletonTower, ends.get(1), path);
+        long hits = cache.getHits();
+        var nearby = new LongLat(appletonTower.getLongitude(), appletonTower.getLatitude() + 0.00005);
+        var replayed = cache.lookup(nearby, ends.get(0)); //a hit from a start 'close-to' the one cached.
+        assertNotNull(replayed);
+        assertEquals(2, replayed.size());
+        assertEquals(nearby.getLatitude(), replayed.get(0).getLatitude(), PathfindingLattice.UNIT);
+        assertEquals(hits + 1, cache.getHits());
+
+        long evictions = cache.getEvictions();
+        for (int i = 2; i <= RouteCache.CAPACITY; i++) {
+            cache.put(appletonTower, ends.get(i), path);
+        }
+        assertEquals(evictions + 1, cache.getEvictions());
+        assertNull(cache.lookup(appletonTower, ends.get(1))); //least recently used, so evicted.
+        assertNotNull(cache.lookup(appletonTower, ends.get(0)));
+        assertNotNull(cache.lookup(appletonTower, ends.get(RouteCache.CAPACITY)));
+        cache.clear();
+    }
+
+    @Test
+    public void testNoFlyZonesRefresh() {
+        // The webserver must be running on port 9898 to run this test.
+        var nfz = NoFlyZones.getInstance();
+        var before = nfz.getSnapshot();
+        nfz.refresh();
+        var after = nfz.getSnapshot();
+        assertNotSame(before, after);
+        assertEquals(before.getVersion() + 1, after.getVersion());
+        assertEquals(after.getVersion(), nfz.getVersion());
+        assertNotSame(before.getIndex(), after.getIndex());
+        assertSame(after.getClearance(), nfz.getClearance());
+
+        for (int angle = LongLat.MIN_ANGLE; angle <= LongLat.MAX_ANGLE; angle += LongLat.ANGLE_INTERVAL) {
+            var to = greyfriarsKirkyard.nextPosition(angle);
+            assertEquals(before.doesIntersectNoFly(greyfriarsKirkyard.getLongitude(), greyfriarsKirkyard.getLatitude(),
+                            to.getLongitude(), to.getLatitude()),
+                    after.doesIntersectNoFly(greyfriarsKirkyard.getLongitude(), greyfriarsKirkyard.getLatitude(),
+                            to.getLongitude(), to.getLatitude()));
+        }
+    }
+
+    @Test
+    public void testCostToGoFieldNeverOverestimates() {
+        // The webserver must be running on port 9898 to run this test.
+        var field = CostToGoFields.getInstance().fieldTo(appletonTower);
+        assertSame(field, CostToGoFields.getInstance().fieldTo(appletonTower));
+        assertNull(CostToGoFields.getInstance().fieldTo(businessSchool));
+        assertTrue(field.getReached() > field.getCellCount() / 2);
+
+        var shop = new What3Words(Menus.getInstance().getShops().get(0).getLocation()).getCoordinates();
+        for (LongLat from : new LongLat[]{businessSchool, shop}) {
+            var route = new Pathfinding().routeTo(from, appletonTower);
+            for (int i = 0; i < route.size(); i++) {
+                var node = route.get(i);
+                assertTrue(field.minMoves(node.getLongitude(), node.getLatitude()) <= route.size() - 1 - i);
+            }
+            assertTrue(field.minMoves(from.getLongitude(), from.getLatitude()) > 0);
+        }
+    }
+
+    /** Moves home from each of the hand-built orders */
+    private static final double[] TOUR_HOME = {12, 40, 7, 25, 33, 18, 9, 45};
+
+    /** Pence each of the hand-built orders collects */
+    private static final int[] TOUR_VALUES = {300, 900, 150, 600, 450, 1200, 200, 750};
+
+    /**
+     * Hand-built moves between eight orders, different each way, and from the start.
+     */
+    private static TourMatrix tourMoves() {
+        var random = new Random(2021);
+        var moves = new TourMatrix(TOUR_HOME.length);
+        for (int x = 0; x < TOUR_HOME.length; x++) {
+            for (int y = 0; y < TOUR_HOME.length; y++) {
+                if (x != y) {
+                    moves.setWeight(x, y, 5 + random.nextInt(46));
+                }
+            }
+            moves.setStartWeight(x, 5 + random.nextInt(46));
+        }
+        return moves;
+    }
+
+    @Test
+    public void testTourImproverReachesLocalOptimum() {
+        var moves = tourMoves();
+        var improver = new TourImprover(moves, TOUR_HOME, Integer.MAX_VALUE);
+        int[] order = {0, 1, 2, 3, 4, 5, 6, 7};
+        int[] tour = improver.improve(order);
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7}, order);
+        assertArrayEquals(order, Arrays.stream(tour).sorted().toArray());
+
+        //no reversal or run moved, scored by summing the whole tour again, is any shorter.
+        double best = improver.tourMoves(tour, tour.length);
+        assertTrue(best <= improver.tourMoves(order, order.length));
+        for (int i = 0; i < tour.length; i++) {
+            for (int j = i + 1; j < tour.length; j++) {
+                int[] reversed = tour.clone();
+                for (int a = i, b = j; a < b; a++, b--) {
+                    int swap = reversed[a];
+                    reversed[a] = reversed[b];
+                    reversed[b] = swap;
+                }
+                assertTrue(improver.tourMoves(reversed, tour.length) >= best);
+            }
+        }
+        for (int run = 1; run <= 3; run++) {
+            for (int i = 0; i + run <= tour.length; i++) {
+                var rest = new ArrayList<Integer>();
+                for (int t = 0; t < tour.length; t++) {
+                    if (t < i || t >= i + run) {
+                        rest.add(tour[t]);
+                    }
+                }
+                for (int gap = 0; gap <= rest.size(); gap++) {
+                    var moved = new ArrayList<>(rest);
+                    for (int r = 0; r < run; r++) {
+                        moved.add(gap + r, tour[i + r]);
+                    }
+                    int[] other = moved.stream().mapToInt(Integer::intValue).toArray();
+                    assertTrue(improver.tourMoves(other, other.length) >= best);
+                }
+            }
+        }
+
+        //with a budget, only the orders which fit are rearranged, and no fewer fit.
+        var tight = new TourImprover(moves, TOUR_HOME, 100);
+        int[] improved = tight.improve(order);
+        int fit = tight.fittingPrefix(order);
+        assertTrue(tight.fittingPrefix(improved) >= fit);
+        assertTrue(tight.tourMoves(improved, tight.fittingPrefix(improved)) <= 100);
+    }
+
+    @Test
+    public void testOrienteeringSolverKeepsBudgetAndValue() {
+        var moves = tourMoves();
+        for (int budget : new int[]{40, 80, 120, 200}) {
+            var improver = new TourImprover(moves, TOUR_HOME, budget);
+            int[] order = {0, 1, 2, 3, 4, 5, 6, 7};
+            int[] start = Arrays.copyOf(order, improver.fittingPrefix(order));
+            long startValue = Arrays.stream(start).mapToLong(o -> TOUR_VALUES[o]).sum();
+
+            for (long nanos : new long[]{0, 5_000_000}) {
+                var solver = new OrienteeringSolver(moves, TOUR_HOME, TOUR_VALUES, budget);
+                int[] plan = solver.solve(start, nanos);
+                assertEquals(plan.length, Arrays.stream(plan).distinct().count());
+                assertTrue(improver.tourMoves(plan, plan.length) <= budget);
+                assertEquals(improver.tourMoves(plan, plan.length), solver.getUsed(), 1e-9);
+                assertEquals(Arrays.stream(plan).mapToLong(o -> TOUR_VALUES[o]).sum(), solver.getValue());
+                assertTrue(solver.getValue() >= startValue);
+            }
+        }
+    }
+
+    @Test
+    public void testPortfolioPicksBestFittingPlan() {
+        var moves = tourMoves();
+        var improver = new TourImprover(moves, TOUR_HOME, 120);
+        var portfolio = new TourPortfolio(moves, TOUR_HOME, TOUR_VALUES, 120);
+        int[] all = {0, 1, 2, 3, 4, 5, 6, 7};
+        int[] fits = Arrays.copyOf(all, improver.fittingPrefix(all));
+        int[] solved = new OrienteeringSolver(moves, TOUR_HOME, TOUR_VALUES, 120).solve(fits, 0);
+        long value = Arrays.stream(solved).mapToLong(o -> TOUR_VALUES[o]).sum();
+        assertTrue(value > Arrays.stream(fits).mapToLong(o -> TOUR_VALUES[o]).sum());
+        portfolio.add("prefix", deadline -> fits);
+        portfolio.add("solver", deadline -> solved);
+        portfolio.add("repeats", deadline -> new int[]{5, 5});
+        portfolio.add("over budget", deadline -> all);
+        portfolio.add("none", deadline -> null);
+
+        for (int run = 0; run < 2; run++) { //a second run must not add to the first.
+            int[] plan = portfolio.run(1_000_000_000L);
+            assertArrayEquals(solved, plan);
+            assertEquals("solver", portfolio.getWinner());
+            assertTrue(portfolio.toString().contains("rejected, not a plan"));
+            assertTrue(portfolio.toString().contains(String.format("rejected, %.0f moves",
+                    improver.tourMoves(all, all.length))));
+            assertTrue(portfolio.toString().contains(String.format("value: %6d", value)));
+        }
+    }
+
+    @Test
+    public void testNextPositionTables() {
+        for (LongLat from : new LongLat[]{appletonTower, businessSchool, greyfriarsKirkyard}) {
+            for (int angle = LongLat.MIN_ANGLE; angle <= LongLat.MAX_ANGLE; angle += LongLat.ANGLE_INTERVAL) {
+                LongLat next = from.nextPosition(angle);
+                assertEquals(from.getLongitude() + (Math.cos(Math.toRadians(angle)) * LongLat.STRAIGHT_LINE_DISTANCE),
+                        next.getLongitude(), 0);
+                assertEquals(from.getLatitude() + (Math.sin(Math.toRadians(angle)) * LongLat.STRAIGHT_LINE_DISTANCE),
+                        next.getLatitude(), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testNoFlyMatchesLinearScan() {
+        // The webserver must be running on port 9898 to run this test.
+        var nfz = NoFlyZones.getInstance();
+        var starts = new ArrayList<LongLat>();
+        for (int i = 0; i <= 60; i++) {
+            for (int j = 0; j <= 30; j++) {
+                starts.add(new LongLat(
+                        LongLat.CONFINEMENT_LONGITUDE_WEST + i * (LongLat.CONFINEMENT_LONGITUDE_EAST - LongLat.CONFINEMENT_LONGITUDE_WEST) / 60,
+                        LongLat.CONFINEMENT_LATITUDE_SOUTH + j * (LongLat.CONFINEMENT_LATITUDE_NORTH - LongLat.CONFINEMENT_LATITUDE_SOUTH) / 30));
+            }
+        }
+        var zones = FeatureCollection.fromJson(ServerIO.getRequest(ServerIO.URLFromPath("buildings/no-fly-zones.geojson")));
+        for (var feature : zones.features()) { //moves from every corner, and along every edge.
+            var ring = ((Polygon) feature.geometry()).coordinates().get(0);
+            for (int i = 0; i < ring.size() - 1; i++) {
+                starts.add(new LongLat(ring.get(i).longitude(), ring.get(i).latitude()));
+                assertEquals(nfz.doesIntersectNoFlyLinear(ring.get(i), ring.get(i + 1)),
+                        nfz.doesIntersectNoFly(ring.get(i), ring.get(i + 1)));
+            }
+        }
+
+        for (LongLat from : starts) {
+            for (int angle = LongLat.MIN_ANGLE; angle <= LongLat.MAX_ANGLE; angle += LongLat.ANGLE_INTERVAL) {
+                var to = from.nextPosition(angle);
+                assertEquals(nfz.doesIntersectNoFlyLinear(from.toPoint(), to.toPoint()),
+                        nfz.doesIntersectNoFly(from.getLongitude(), from.getLatitude(), to.getLongitude(), to.getLatitude()));
+            }
+        }
+    }
+
 //    @Test
 //    public void testMenusOne() {
 //        // The webserver must be running on port 9898 to run this test.
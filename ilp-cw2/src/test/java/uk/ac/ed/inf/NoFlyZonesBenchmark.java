@@ -0,0 +1,102 @@
+package uk.ac.ed.inf;
+
+import com.mapbox.geojson.Point;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks for the no-fly zone collision check, run over random moves inside the confinement area.
+ * Not part of the normal test run, the web server must be running on port 9898.
+ * Run with: mvn test -Dtest=NoFlyZonesBenchmark
+ */
+public class NoFlyZonesBenchmark {
+
+    /** Number of random moves checked in each pass */
+    private static final int MOVES = 200_000;
+
+    /** How many times each method is timed after warming up */
+    private static final int REPEATS = 5;
+
+    /** Seed for the random moves, so every run checks the same ones */
+    private static final long SEED = 2021;
+
+    /**
+     * Generate random legal moves starting inside the confinement area.
+     *
+     * @return start and end points of each move, as {start, end}.
+     */
+    static Point[][] randomMoves() {
+        var random = new Random(SEED);
+        var moves = new Point[MOVES][];
+        for (int i = 0; i < MOVES; i++) {
+            double lng = LongLat.CONFINEMENT_LONGITUDE_WEST +
+                    random.nextDouble() * (LongLat.CONFINEMENT_LONGITUDE_EAST - LongLat.CONFINEMENT_LONGITUDE_WEST);
+            double lat = LongLat.CONFINEMENT_LATITUDE_SOUTH +
+                    random.nextDouble() * (LongLat.CONFINEMENT_LATITUDE_NORTH - LongLat.CONFINEMENT_LATITUDE_SOUTH);
+            int angle = random.nextInt(LongLat.ANGLE_COUNT) * LongLat.ANGLE_INTERVAL;
+            var from = new LongLat(lng, lat);
+            moves[i] = new Point[]{from.toPoint(), from.nextPosition(angle).toPoint()};
+        }
+        return moves;
+    }
+
+    /**
+     * A way of checking a move against the no-fly zones.
+     */
+    private interface Check {
+        boolean doesIntersect(Point start, Point destination);
+    }
+
+    /**
+     * Time the fastest pass of a check over every move.
+     *
+     * @param moves to check.
+     * @param check to time.
+     * @return best time in nanoseconds.
+     */
+    private static long time(Point[][] moves, Check check) {
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < REPEATS; r++) {
+            long t0 = System.nanoTime();
+            int blocked = 0;
+            for (Point[] move : moves) {
+                if (check.doesIntersect(move[0], move[1])) {
+                    blocked++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - t0);
+            assertTrue(blocked > 0);
+        }
+        return best;
+    }
+
+    @Test
+    public void benchmarkIndexAgainstLinearScan() {
+        var nfz = NoFlyZones.getInstance();
+        var moves = randomMoves();
+
+        int blocked = 0;
+        for (Point[] move : moves) { //warm up, and check both agree on every move.
+            boolean linear = nfz.doesIntersectNoFlyLinear(move[0], move[1]);
+            assertEquals(linear, nfz.doesIntersectNoFly(move[0], move[1]));
+            if (linear) {
+                blocked++;
+            }
+        }
+
+        long linear = time(moves, nfz::doesIntersectNoFlyLinear);
+        long indexed = time(moves, nfz.getIndex()::doesIntersect);
+        long skipped = nfz.getClearance().getSkipped();
+        long cleared = time(moves, nfz::doesIntersectNoFly);
+        System.out.printf("MOVES: %d BLOCKED: %d EDGES: %d GRID ENTRIES: %d%n",
+                moves.length, blocked, nfz.getIndex().getEdgeCount(), nfz.getIndex().getCellEntries());
+        System.out.printf("LINEAR: %.3f ms INDEXED: %.3f ms SPEEDUP: %.1fx%n",
+                linear / 1e6, indexed / 1e6, (double) linear / indexed);
+        System.out.printf("WITH CLEARANCE: %.3f ms SPEEDUP: %.1fx SKIPPED: %d of %d%n",
+                cleared / 1e6, (double) linear / cleared,
+                (nfz.getClearance().getSkipped() - skipped) / REPEATS, moves.length);
+    }
+}
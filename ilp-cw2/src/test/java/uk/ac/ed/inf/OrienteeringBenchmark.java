@@ -0,0 +1,69 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks for the orienteering solver against taking the improved greedy permutation and dropping whatever does
+ * not fit at the end. The day's real budget is usually loose enough for both to deliver nearly everything, so the
+ * solver is also run with smaller move budgets on the same day's orders.
+ * Not part of the normal test run, the web server and database must be running.
+ * Run with: mvn test -Dtest=OrienteeringBenchmark
+ */
+public class OrienteeringBenchmark {
+
+    /** Day whose orders are planned */
+    private static final int DAY = 25, MONTH = 12, YEAR = 2023;
+
+    /** Move budgets the solver is run with */
+    private static final int[] MOVE_BUDGETS = {300, 600, 900, 1200, PathBuilder.MOVES_ALLOWED};
+
+    /** Time budgets the solver is run with, in milliseconds */
+    private static final long[] TIME_BUDGETS = {0, 10, 100, 1000};
+
+    @Test
+    public void benchmarkSolverAgainstGreedyPrefix() {
+        var orders = new OrderHandler(DAY, MONTH, YEAR);
+        orders.fetchOrders();
+        var builder = new PathBuilder(orders);
+        builder.buildGraph();
+        int[] perm = builder.indexesOf(builder.choosePerm());
+        int[] values = builder.orderValues();
+        long total = Arrays.stream(values).sum();
+
+        for (int moveBudget : MOVE_BUDGETS) {
+            var improver = new TourImprover(builder.getMoveMatrix(), builder.getHomeMoves(), moveBudget);
+            int[] prefix = Arrays.copyOf(perm, improver.fittingPrefix(perm));
+            long greedy = Arrays.stream(prefix).mapToLong(o -> values[o]).sum();
+            var line = new StringBuilder(String.format("MOVES: %d GREEDY PREFIX: %.3f", moveBudget,
+                    greedy / (double) total));
+
+            for (long millis : TIME_BUDGETS) {
+                var solver = new OrienteeringSolver(builder.getMoveMatrix(), builder.getHomeMoves(), values, moveBudget);
+                int[] chosen = solver.solve(prefix, millis * 1_000_000);
+                assertTrue(solver.getUsed() <= moveBudget);
+                assertTrue(solver.getValue() >= greedy);
+                assertEquals(solver.getValue(), Arrays.stream(chosen).mapToLong(o -> values[o]).sum());
+                line.append(String.format(" %d ms: %.3f", millis, solver.getValue() / (double) total));
+            }
+            System.out.println(line);
+        }
+    }
+
+    @Test
+    public void benchmarkMonetaryValue() {
+        for (long millis : TIME_BUDGETS) {
+            var orders = new OrderHandler(DAY, MONTH, YEAR);
+            orders.fetchOrders();
+            var builder = new OrienteeringPathBuilder(orders, millis);
+            builder.buildGraph();
+            builder.doTour();
+            assertTrue(builder.getFlightPath().size() <= PathBuilder.MOVES_ALLOWED);
+            System.out.printf("SOLVER BUDGET: %d ms MONETARY VALUE: %.4f MOVES: %d%n",
+                    millis, builder.getMonetaryValue(), builder.getFlightPath().size());
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks for the pathfinding, run over every shop to delivery point pair on the web server.
+ * Not part of the normal test run, the web server must be running on port 9898.
+ * Run with: mvn test -Dtest=PathfindingBenchmark
+ */
+public class PathfindingBenchmark {
+
+    /** Local copy of the website, used to discover every What3Words address */
+    private static final Path WEBSITE_WORDS = Paths.get("..", "website", "words");
+
+    /** How many times each route is timed after warming up */
+    private static final int REPEATS = 5;
+
+    /**
+     * Find every shop to delivery point pair available on the website.
+     * A delivery point is any What3Words address which is not a shop.
+     *
+     * @return collection of pairs, each as {shop, delivery point}.
+     */
+    static List<LongLat[]> shopToDeliveryPairs() {
+        var shopWords = new HashSet<String>();
+        for (Shop shop : Menus.getInstance().getShops()) {
+            shopWords.add(shop.getLocation());
+        }
+
+        List<String> allWords;
+        try (Stream<Path> files = Files.walk(WEBSITE_WORDS)) {
+            allWords = files.filter(p -> p.getFileName().toString().equals("details.json"))
+                    .map(p -> WEBSITE_WORDS.relativize(p.getParent()).toString().replace(p.getFileSystem().getSeparator(), "."))
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new RuntimeException("COULD NOT READ WEBSITE WORDS");
+        }
+
+        var pairs = new ArrayList<LongLat[]>();
+        for (String shop : shopWords.stream().sorted().collect(Collectors.toList())) {
+            for (String word : allWords) {
+                if (!shopWords.contains(word)) {
+                    pairs.add(new LongLat[]{new What3Words(shop).getCoordinates(), new What3Words(word).getCoordinates()});
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * One way of searching for a route.
+     */
+    private interface Search {
+        List<PathfindingNode> route(Pathfinding pathfinding, LongLat start, LongLat end);
+    }
+
+    /**
+     * Time the best of several searches for every pair, printing moves, expanded nodes and time.
+     *
+     * @param label  printed before the totals.
+     * @param pairs  to route between.
+     * @param search to time.
+     */
+    private static void measure(String label, List<LongLat[]> pairs, Search search) {
+        for (LongLat[] pair : pairs) { //warm up
+            search.route(new Pathfinding(), pair[0], pair[1]);
+        }
+
+        long totalNanos = 0;
+        long totalExpanded = 0;
+        int totalMoves = 0;
+        double worstBound = 1;
+        for (LongLat[] pair : pairs) {
+            long best = Long.MAX_VALUE;
+            List<PathfindingNode> path = null;
+            Pathfinding pathfinding = null;
+            for (int i = 0; i < REPEATS; i++) {
+                pathfinding = new Pathfinding();
+                long t0 = System.nanoTime();
+                path = search.route(pathfinding, pair[0], pair[1]);
+                best = Math.min(best, System.nanoTime() - t0);
+            }
+            assertTrue(path.get(path.size() - 1).closeTo(pair[1]));
+            totalNanos += best;
+            totalExpanded += pathfinding.getNodesExpanded();
+            totalMoves += path.size() - 1;
+            if (!Double.isNaN(pathfinding.getBoundAchieved())) {
+                worstBound = Math.max(worstBound, pathfinding.getBoundAchieved());
+            }
+            System.out.printf("%s %s -> %s: %d moves, %d expanded (%d backward), %.3f ms%n",
+                    label, pair[0], pair[1], path.size() - 1, pathfinding.getNodesExpanded(),
+                    pathfinding.getNodesExpandedBackward(), best / 1e6);
+        }
+        System.out.printf("%s PAIRS: %d TOTAL MOVES: %d TOTAL EXPANDED: %d TOTAL TIME: %.3f ms WORST BOUND: %.3f%n",
+                label, pairs.size(), totalMoves, totalExpanded, totalNanos / 1e6, worstBound);
+    }
+
+    @Test
+    public void benchmarkShopToDelivery() {
+        var pairs = shopToDeliveryPairs();
+        assertFalse(pairs.isEmpty());
+        measure("FORWARD", pairs, (p, s, e) -> p.routeTo(s, e));
+        measure("BIDIRECTIONAL", pairs, (p, s, e) -> p.bidirectionalRouteTo(s, e));
+    }
+
+    @Test
+    public void benchmarkBoundedSuboptimal() {
+        var pairs = shopToDeliveryPairs();
+        for (double epsilon : new double[]{0, 0.1, 0.25, 0.5, 1, 2}) {
+            measure("EPSILON " + epsilon, pairs, (p, s, e) -> {
+                var path = p.weightedRouteTo(s, e, epsilon);
+                assertTrue(p.getBoundAchieved() <= 1 + epsilon + 1e-9);
+                return path;
+            });
+        }
+    }
+
+    @Test
+    public void benchmarkAnytime() {
+        var pairs = shopToDeliveryPairs();
+        for (long budgetMillis : new long[]{0, 1, 5, 20, 100}) {
+            measure("BUDGET " + budgetMillis + " ms", pairs,
+                    (p, s, e) -> p.anytimeRouteTo(s, e, budgetMillis * 1_000_000));
+        }
+    }
+
+    @Test
+    public void benchmarkCorridor() {
+        var pairs = shopToDeliveryPairs();
+        measure("FULL", pairs, (p, s, e) -> p.routeTo(s, e));
+
+        int coarse = 0;
+        int fallbacks = 0;
+        for (LongLat[] pair : pairs) {
+            var pathfinding = new Pathfinding();
+            pathfinding.corridorRouteTo(pair[0], pair[1]);
+            coarse += pathfinding.getCoarseExpansions();
+            fallbacks += pathfinding.isCorridorFallback() ? 1 : 0;
+        }
+        measure("CORRIDOR", pairs, Pathfinding::corridorRouteTo);
+        System.out.printf("CORRIDOR COARSE EXPANDED: %d (GRID OF %d SQUARES) FALLBACKS: %d%n",
+                coarse, NoFlyZones.getInstance().getCorridors().getCellCount(), fallbacks);
+    }
+
+    @Test
+    public void benchmarkObstacleHeuristic() {
+        var pairs = shopToDeliveryPairs();
+        measure("OPTIMAL", pairs, (p, s, e) -> p.weightedRouteTo(s, e, 0.0));
+        measure("OPTIMAL AROUND BUILDINGS", pairs, (p, s, e) -> {
+            p.setObstacleAware(true);
+            return p.weightedRouteTo(s, e, 0.0);
+        });
+        measure("FLIGHT", pairs, (p, s, e) -> p.routeTo(s, e));
+        measure("FLIGHT AROUND BUILDINGS", pairs, (p, s, e) -> {
+            p.setObstacleAware(true);
+            return p.routeTo(s, e);
+        });
+        System.out.printf("VISIBILITY GRAPH CORNERS: %d%n", NoFlyZones.getInstance().getVisibility().getVertexCount());
+    }
+
+    @Test
+    public void benchmarkLandmarks() {
+        var pairs = shopToDeliveryPairs();
+        System.out.println("LANDMARK TABLES: " + LandmarkTables.getInstance());
+        measure("OPTIMAL", pairs, (p, s, e) -> p.weightedRouteTo(s, e, 0.0));
+        measure("OPTIMAL ALT", pairs, (p, s, e) -> {
+            p.setLandmarkAware(true);
+            return p.weightedRouteTo(s, e, 0.0);
+        });
+        measure("OPTIMAL ALT AROUND BUILDINGS", pairs, (p, s, e) -> {
+            p.setLandmarkAware(true);
+            p.setObstacleAware(true);
+            return p.weightedRouteTo(s, e, 0.0);
+        });
+        measure("FLIGHT ALT", pairs, (p, s, e) -> {
+            p.setLandmarkAware(true);
+            return p.routeTo(s, e);
+        });
+    }
+
+    @Test
+    public void benchmarkCostToGoFields() {
+        var pairs = new ArrayList<LongLat[]>();
+        for (LongLat[] pair : shopToDeliveryPairs()) {
+            pairs.add(new LongLat[]{pair[1], pair[0]}); //towards the shop, which has a field.
+        }
+        measure("TO SHOP OPTIMAL", pairs, (p, s, e) -> p.weightedRouteTo(s, e, 0.0));
+        measure("TO SHOP OPTIMAL WITH FIELD", pairs, (p, s, e) -> {
+            p.setObstacleAware(true);
+            return p.weightedRouteTo(s, e, 0.0);
+        });
+
+        int exact = 0;
+        int bound = 0;
+        for (LongLat[] pair : pairs) {
+            var drone = new Drone(pair[0]);
+            exact += drone.movesTo(pair[1]);
+            bound += drone.minMovesTo(pair[1]);
+        }
+        int visibility = 0;
+        for (LongLat[] pair : pairs) {
+            visibility += new ObstacleHeuristic(NoFlyZones.getInstance(), pair[1])
+                    .minMoves(pair[0].getLongitude(), pair[0].getLatitude());
+        }
+        System.out.printf("TO SHOP MOVES: %d, FIELD LOWER BOUND: %d, VISIBILITY GRAPH ALONE: %d%n",
+                exact, bound, visibility);
+
+        long t0 = System.nanoTime();
+        var field = new CostToGoField(NoFlyZones.getInstance().getSnapshot(), pairs.get(0)[1]);
+        System.out.printf("ONE FIELD: %d OF %d SQUARES REACHED IN %.3f ms%n",
+                field.getReached(), field.getCellCount(), (System.nanoTime() - t0) / 1e6);
+    }
+
+    @Test
+    public void benchmarkOneToMany() {
+        var byShop = new java.util.LinkedHashMap<LongLat, List<LongLat>>();
+        for (LongLat[] pair : shopToDeliveryPairs()) {
+            byShop.computeIfAbsent(pair[0], k -> new ArrayList<>()).add(pair[1]);
+        }
+
+        for (double epsilon : new double[]{0, 0.25, 1}) {
+            long expanded = 0;
+            int moves = 0;
+            long t0 = System.nanoTime();
+            for (var row : byShop.entrySet()) {
+                var pathfinding = new Pathfinding();
+                for (List<PathfindingNode> path : pathfinding.routesTo(row.getKey(), row.getValue(), epsilon)) {
+                    moves += path.size() - 1;
+                }
+                expanded += pathfinding.getNodesExpanded();
+            }
+            System.out.printf("ONE TO MANY EPSILON %s SEARCHES: %d TOTAL MOVES: %d TOTAL EXPANDED: %d TIME: %.3f ms%n",
+                    epsilon, byShop.size(), moves, expanded, (System.nanoTime() - t0) / 1e6);
+        }
+        measure("ONE TO ONE", shopToDeliveryPairs(), (p, s, e) -> p.routeTo(s, e));
+        measure("ONE TO ONE OPTIMAL", shopToDeliveryPairs(), (p, s, e) -> p.weightedRouteTo(s, e, 0.0));
+    }
+
+    @Test
+    public void benchmarkParallel() {
+        var pairs = shopToDeliveryPairs();
+        int[] serialMoves = new int[pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            serialMoves[i] = new Pathfinding().weightedRouteTo(pairs.get(i)[0], pairs.get(i)[1], 0.0).size() - 1;
+        }
+        measure("SERIAL OPTIMAL", pairs, (p, s, e) -> p.weightedRouteTo(s, e, 0.0));
+        System.out.println("AVAILABLE PROCESSORS: " + Runtime.getRuntime().availableProcessors());
+
+        for (int threads : new int[]{1, 2, 4, 8}) {
+            measure("PARALLEL " + threads + " THREADS", pairs, (p, s, e) -> p.parallelRouteTo(s, e, threads));
+            for (int i = 0; i < pairs.size(); i++) {
+                var path = new Pathfinding().parallelRouteTo(pairs.get(i)[0], pairs.get(i)[1], threads);
+                assertEquals(serialMoves[i], path.size() - 1);
+            }
+        }
+    }
+
+    @Test
+    public void benchmarkConePruning() {
+        var pairs = shopToDeliveryPairs();
+        measure("INCREMENT 30", pairs, (p, s, e) -> p.routeTo(s, e));
+        measure("CONE PRUNED", pairs, (p, s, e) -> {
+            p.setConePruning(true);
+            return p.routeTo(s, e);
+        });
+    }
+}
@@ -0,0 +1,45 @@
+package uk.ac.ed.inf;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks for the portfolio of tour strategies over a spread of days, against the path built as before.
+ * Prints every strategy's report for each day, then which strategy won on which day.
+ * Not part of the normal test run, the web server and database must be running.
+ * Run with: mvn test -Dtest=PortfolioBenchmark
+ */
+public class PortfolioBenchmark {
+
+    /** Days planned, as day, month and year */
+    private static final int[][] DAYS = {
+            {1, 1, 2022}, {2, 2, 2022}, {3, 3, 2022}, {4, 4, 2022}, {5, 5, 2022}, {6, 6, 2022},
+            {7, 7, 2022}, {8, 8, 2022}, {9, 9, 2022}, {10, 10, 2022}, {11, 11, 2022}, {12, 12, 2022},
+            {25, 12, 2023}};
+
+    /** Time the portfolio may take each day in milliseconds */
+    private static final long BUDGET_MILLIS = 1000;
+
+    @Test
+    public void benchmarkPortfolio() {
+        var summary = new StringBuilder();
+        for (int[] day : DAYS) {
+            var orders = new OrderHandler(day[0], day[1], day[2]);
+            orders.fetchOrders();
+            var before = new PathBuilder(orders);
+            before.buildGraph();
+            before.doTour();
+
+            var builder = new PortfolioPathBuilder(orders, BUDGET_MILLIS);
+            builder.buildGraph();
+            builder.doTour();
+            assertTrue(builder.getFlightPath().size() <= PathBuilder.MOVES_ALLOWED);
+            assertTrue(builder.getProfit() >= before.getProfit());
+            summary.append(String.format("%n%02d/%02d/%d WINNER: %-22s PROFIT: %6d -> %6d MOVES: %4d -> %4d",
+                    day[0], day[1], day[2], builder.getPortfolio().getWinner(), before.getProfit(),
+                    builder.getProfit(), before.getFlightPath().size(), builder.getFlightPath().size()));
+        }
+        System.out.println("PORTFOLIO SUMMARY:" + summary);
+    }
+}
@@ -0,0 +1,126 @@
+package uk.ac.ed.inf;
+
+import org.jgrapht.Graphs;
+import org.jgrapht.graph.SimpleDirectedWeightedGraph;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmarks for building the greedy tour from a dense matrix, against the JGraphT graph it replaced, over random
+ * weights. Weights are drawn from a few values so that ties are common, and both must give the same permutation.
+ * Not part of the normal test run, needs no server.
+ * Run with: mvn test -Dtest=TourMatrixBenchmark
+ */
+public class TourMatrixBenchmark {
+
+    /** Number of orders in each instance */
+    private static final int[] SIZES = {10, 100, 500, 1000, 2000, 4000};
+
+    /** Largest instance also timed with the graph, which builds, copies and pops an object for every edge */
+    private static final int LARGEST_GRAPH = 500;
+
+    /** How many times each method is timed, keeping the fastest */
+    private static final int REPEATS = 3;
+
+    /** Seed for the random weights, so every run builds the same instances */
+    private static final long SEED = 2021;
+
+    /**
+     * A random matrix with weights from only a few values.
+     *
+     * @param stops  number of stops.
+     * @param random source of the weights.
+     * @return the matrix.
+     */
+    private static TourMatrix randomMatrix(int stops, Random random) {
+        var matrix = new TourMatrix(stops);
+        for (int y = 0; y < stops; y++) {
+            for (int x = 0; x < stops; x++) {
+                if (x != y) {
+                    matrix.setWeight(x, y, random.nextInt(50) / 7.0);
+                }
+            }
+            matrix.setStartWeight(y, random.nextInt(50) / 7.0);
+        }
+        return matrix;
+    }
+
+    /**
+     * The greedy tour as it was built before, by popping vertices from a copy of a JGraphT graph.
+     *
+     * @param matrix weights to build the graph from.
+     * @return index of every stop in the order visited.
+     */
+    private static List<Integer> graphOrder(TourMatrix matrix) {
+        var graph = new SimpleDirectedWeightedGraph<String, tspEdge>(tspEdge.class);
+        int stops = matrix.getStops();
+        for (int i = 0; i < stops; i++) {
+            graph.addVertex(Integer.toString(i));
+        }
+        for (int x = 0; x < stops; x++) {
+            for (int y = 0; y < stops; y++) {
+                if (x != y) {
+                    var edge = new tspEdge(matrix.getWeight(x, y));
+                    graph.addEdge(Integer.toString(x), Integer.toString(y), edge);
+                    graph.setEdgeWeight(edge, matrix.getWeight(x, y));
+                }
+            }
+        }
+        graph.addVertex("START");
+        for (int y = 0; y < stops; y++) {
+            var edge = new tspEdge(matrix.getStartWeight(y));
+            graph.addEdge("START", Integer.toString(y), edge);
+            graph.setEdgeWeight(edge, matrix.getStartWeight(y));
+        }
+
+        var local = new SimpleDirectedWeightedGraph<String, tspEdge>(tspEdge.class);
+        Graphs.addGraph(local, graph);
+        var order = new ArrayList<Integer>();
+        String at = "START";
+        while (local.outDegreeOf(at) > 0) {
+            var next = local.getEdgeTarget(Collections.min(local.outgoingEdgesOf(at)));
+            local.removeVertex(at);
+            at = next;
+            order.add(Integer.parseInt(next));
+        }
+        return order;
+    }
+
+    @Test
+    public void benchmarkGreedyScaling() {
+        var random = new Random(SEED);
+        for (int stops : SIZES) {
+            var matrix = randomMatrix(stops, random);
+            int[] order = matrix.greedyOrder();
+
+            long matrixBest = Long.MAX_VALUE;
+            for (int r = 0; r < REPEATS; r++) {
+                long t0 = System.nanoTime();
+                assertArrayEquals(order, matrix.greedyOrder());
+                matrixBest = Math.min(matrixBest, System.nanoTime() - t0);
+            }
+
+            String graphTime = "-";
+            if (stops <= LARGEST_GRAPH) {
+                long graphBest = Long.MAX_VALUE;
+                for (int r = 0; r < REPEATS; r++) {
+                    long t0 = System.nanoTime();
+                    var graph = graphOrder(matrix);
+                    graphBest = Math.min(graphBest, System.nanoTime() - t0);
+                    assertEquals(graph.size(), order.length);
+                    for (int i = 0; i < order.length; i++) {
+                        assertEquals((int) graph.get(i), order[i]);
+                    }
+                }
+                graphTime = String.format("%.3f ms", graphBest / 1e6);
+            }
+            System.out.printf("ORDERS: %d MATRIX: %.3f ms GRAPH: %s%n", stops, matrixBest / 1e6, graphTime);
+        }
+    }
+}